@@ -0,0 +1,156 @@
+package org.rodney;
+
+import org.rodney.trie.SpillingWordCounter;
+import org.rodney.trie.TrieResultWriter;
+import org.rodney.trie.WalkTrieNodes;
+import org.rodney.trie.WordsAndCounts;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.MalformedInputException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Count words with an engine chosen automatically from a sample of the input file.
+ * <br/>
+ * Usage: AutoWordCount [input_file [output_file]]
+ * <br/>
+ * The sample profile and the engine decision are printed first. REGEX and TRIE print the top 40 words;
+ * SPILLING_TRIE writes all word counts to output_file as TSV, since its vocabulary does not fit in memory.
+ * Both trie engines count with a SpillingWordCounter, so if the TRIE capacity was underestimated, TRIE spills
+ * and writes output_file too. If REGEX finds bytes that are not UTF-8 outside the sample, the file is counted
+ * with a trie engine instead.
+ */
+public class AutoWordCount {
+    private static final String input_file = "src/main/resources/kjvbible.txt";
+    private static final String output_file = "build/word_counts.tsv";
+    private static final int TOP_WORDS = 40;
+
+    public static void main(String[] args) throws Exception {
+        Path input_path = Path.of(args.length>0 ? args[0] : input_file);
+        Path output_path = Path.of(args.length>1 ? args[1] : output_file);
+
+        InputProfile profile = InputProfile.sample(input_path);
+        EngineSelection selection = EngineSelection.select(profile, Runtime.getRuntime().availableProcessors());
+        System.out.println(profile);
+        count(input_path, output_path, selection);
+    }
+
+    private static void count(Path input_path, Path output_path, EngineSelection selection) throws IOException {
+        System.out.println(selection);
+        switch (selection.getEngine()) {
+            case REGEX:
+                try {
+                    count_with_regex(input_path, selection);
+                } catch (MalformedInputException ex) {
+                    // the sampled blocks were valid UTF-8, but the rest of the file is not
+                    count(
+                            input_path,
+                            output_path,
+                            EngineSelection.select_trie(selection.getProfile(), "input is not valid UTF-8")
+                    );
+                }
+                break;
+            case TRIE:
+                count_with_trie(input_path, output_path, selection);
+                break;
+            case SPILLING_TRIE:
+                count_with_spilling_trie(input_path, output_path, selection);
+                break;
+        }
+    }
+
+    private static void count_with_regex(Path input_path, EngineSelection selection) throws IOException {
+        Map<String,Long> word_counts = MemoryRegexWordCount.count_words(input_path, selection.getParallelism()>1);
+        word_counts.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
+                .limit(TOP_WORDS)
+                .forEach(entry -> System.out.println(
+                        String.format("%8d  %s",entry.getValue(), entry.getKey())
+                ));
+    }
+
+    private static void count_with_trie(Path input_path, Path output_path, EngineSelection selection)
+            throws IOException {
+        Path spill_directory = Files.createTempDirectory("word-count-spill-");
+        try {
+            SpillingWordCounter counter = new SpillingWordCounter(selection.getMemoryBudgetBytes(), spill_directory);
+            parse_file(counter, input_path);
+            counter.end_word();
+            if (counter.getRunCount()>0) {
+                System.out.println("TrieBuffer capacity "+selection.getTrieCapacity()+" was too small; spilled");
+                merge_runs(counter, output_path);
+            } else {
+                WordsAndCounts words = new WalkTrieNodes(counter.getTrieBuffer()).walk_trie_nodes();
+                for (int i=0;i<Math.min(TOP_WORDS, words.getWordCount());i++) {
+                    System.out.println(String.format("%8d  %s", words.get_sorted_count(i), words.get_sorted_word(i)));
+                }
+            }
+        } catch (Throwable ex) {
+            delete_spill_directory(spill_directory, ex);
+            throw ex;
+        }
+        delete_spill_directory(spill_directory, null);
+    }
+
+    private static void count_with_spilling_trie(
+            Path input_path,
+            Path output_path,
+            EngineSelection selection
+    ) throws IOException {
+        Path spill_directory = Files.createTempDirectory("word-count-spill-");
+        try {
+            SpillingWordCounter counter = new SpillingWordCounter(selection.getMemoryBudgetBytes(), spill_directory);
+            parse_file(counter, input_path);
+            merge_runs(counter, output_path);
+        } catch (Throwable ex) {
+            delete_spill_directory(spill_directory, ex);
+            throw ex;
+        }
+        delete_spill_directory(spill_directory, null);
+    }
+
+    private static void parse_file(SpillingWordCounter counter, Path input_path) throws IOException {
+        try (FileChannel channel = FileChannel.open(input_path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // a single mapping is limited to Integer.MAX_VALUE bytes
+            for (long position=0;position<size;position+=Integer.MAX_VALUE) {
+                long length = Math.min(Integer.MAX_VALUE, size-position);
+                counter.parse(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+        }
+    }
+
+    private static void merge_runs(SpillingWordCounter counter, Path output_path) throws IOException {
+        int runs = counter.getRunCount();
+        long words = counter.merge(new TrieResultWriter(TrieResultWriter.Format.TSV), output_path);
+        System.out.println("runs="+runs+" words="+words+" output="+output_path);
+    }
+
+    /**
+     * Delete the spill directory and any runs left in it, e.g. after a failed parse.
+     * @param failure the exception that is being thrown, if any; a cleanup error is added to it as suppressed,
+     *                so that it does not hide the original error
+     */
+    private static void delete_spill_directory(Path spill_directory, Throwable failure) throws IOException {
+        try {
+            try (Stream<Path> runs = Files.list(spill_directory)) {
+                for (Path run : runs.collect(Collectors.toList())) {
+                    Files.deleteIfExists(run);
+                }
+            }
+            Files.deleteIfExists(spill_directory);
+        } catch (IOException ex) {
+            if (failure==null) {
+                throw ex;
+            }
+            failure.addSuppressed(ex);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.rodney;
+
+import org.rodney.trie.SpillingWordCounter;
+
+/**
+ * Choose a word count engine, TrieBuffer capacity and parallelism from an InputProfile.
+ * <ul>
+ *     <li>REGEX : MemoryRegexWordCount; keeps non-Ascii words intact, which the trie engines can not do.
+ *     Chosen when the sample has too many non-Ascii bytes, but only if the sample is valid UTF-8 and the whole file
+ *     fits in the heap as a String, since REGEX decodes the file into one String. Otherwise a trie engine counts the
+ *     file and drops the non-Ascii letters. Large files are counted with a parallel stream.</li>
+ *     <li>TRIE : a single TrieBuffer sized from the estimated trie node count plus headroom. It runs in a
+ *     SpillingWordCounter with the smallest merge budget, so an underestimate spills instead of failing.</li>
+ *     <li>SPILLING_TRIE : SpillingWordCounter; chosen when the estimated trie nodes do not fit in one TrieBuffer.</li>
+ * </ul>
+ * The trie engines are single threaded, because TrieBuffer is not thread safe.
+ */
+public class EngineSelection {
+
+    public enum Engine { REGEX, TRIE, SPILLING_TRIE }
+
+    // more non-Ascii bytes than this and the trie engines would drop too many letters
+    public static final double MAX_TRIE_NON_ASCII_RATIO = 0.01;
+    // extra trie nodes on top of the estimate, since the estimate comes from a sample
+    public static final double TRIE_CAPACITY_HEADROOM = 1.5;
+    public static final int MIN_TRIE_CAPACITY = 1024;
+    // runs merged at a time by SPILLING_TRIE
+    public static final int SPILLING_MERGE_FAN_IN = 64;
+    // files smaller than this are not worth a parallel stream
+    public static final long MIN_PARALLEL_FILE_SIZE = 64L<<20;
+    // a non-Ascii String takes 2 bytes per char, and the longest array is Integer.MAX_VALUE bytes
+    public static final long MAX_REGEX_FILE_SIZE = Integer.MAX_VALUE/2;
+    // heap used by REGEX per input byte: the file bytes, the decoded String and its lower case copy, plus headroom
+    public static final long REGEX_HEAP_BYTES_PER_INPUT_BYTE = 6;
+
+    protected final InputProfile profile;
+    protected final Engine engine;
+    protected final int trie_capacity;
+    protected final long memory_budget_bytes;
+    protected final int parallelism;
+    protected final String reason;
+
+    protected EngineSelection(
+            InputProfile profile,
+            Engine engine,
+            int trie_capacity,
+            long memory_budget_bytes,
+            int parallelism,
+            String reason
+    ) {
+        this.profile = profile;
+        this.engine = engine;
+        this.trie_capacity = trie_capacity;
+        this.memory_budget_bytes = memory_budget_bytes;
+        this.parallelism = parallelism;
+        this.reason = reason;
+    }
+
+    /**
+     * Choose an engine for a profiled input, for the heap of this JVM
+     * @param profile
+     * @param available_processors
+     * @return
+     */
+    public static EngineSelection select(InputProfile profile, int available_processors) {
+        return select(profile, available_processors, Runtime.getRuntime().maxMemory());
+    }
+
+    /**
+     * Choose an engine for a profiled input
+     * @param profile
+     * @param available_processors
+     * @param max_heap_bytes heap available to REGEX
+     * @return
+     */
+    public static EngineSelection select(InputProfile profile, int available_processors, long max_heap_bytes) {
+        if (profile.getNonAsciiRatio()<=MAX_TRIE_NON_ASCII_RATIO) {
+            return select_trie(profile, null);
+        }
+        String non_ascii = String.format(
+                "non-Ascii ratio %.4f > %.4f", profile.getNonAsciiRatio(), MAX_TRIE_NON_ASCII_RATIO
+        );
+        if (!profile.isValidUtf8()) {
+            return select_trie(profile, non_ascii+" but the sample is not valid UTF-8");
+        }
+        long file_size = profile.getFileSize();
+        if (file_size>MAX_REGEX_FILE_SIZE || file_size*REGEX_HEAP_BYTES_PER_INPUT_BYTE>max_heap_bytes) {
+            return select_trie(
+                    profile,
+                    non_ascii+" but "+file_size+" bytes do not fit in a "+max_heap_bytes+" byte heap as a String"
+            );
+        }
+        int parallelism = file_size>=MIN_PARALLEL_FILE_SIZE ? available_processors : 1;
+        return new EngineSelection(profile, Engine.REGEX, 0, 0, parallelism, non_ascii);
+    }
+
+    /**
+     * Choose TRIE or SPILLING_TRIE for a profiled input
+     * @param profile
+     * @param regex_fallback why REGEX was not chosen for a non-Ascii input, or null
+     * @return
+     */
+    static EngineSelection select_trie(InputProfile profile, String regex_fallback) {
+        String fallback = regex_fallback==null ? "" : regex_fallback+"; non-Ascii letters are dropped; ";
+        long needed_nodes = Math.round(profile.getEstimatedTrieNodes()*TRIE_CAPACITY_HEADROOM);
+        if (!profile.isTrieSaturated() && needed_nodes<=SpillingWordCounter.MAX_TRIE_CAPACITY) {
+            int capacity = (int)Math.max(MIN_TRIE_CAPACITY, needed_nodes);
+            capacity = Math.min(capacity, SpillingWordCounter.MAX_TRIE_CAPACITY);
+            return new EngineSelection(
+                    profile, Engine.TRIE, capacity,
+                    SpillingWordCounter.memory_budget_for(capacity, SpillingWordCounter.MIN_MERGE_FAN_IN), 1,
+                    fallback+"estimated "+profile.getEstimatedTrieNodes()+" trie nodes fit in one TrieBuffer"
+            );
+        }
+
+        int capacity = SpillingWordCounter.MAX_TRIE_CAPACITY;
+        return new EngineSelection(
+                profile, Engine.SPILLING_TRIE, capacity,
+                SpillingWordCounter.memory_budget_for(capacity, SPILLING_MERGE_FAN_IN), 1,
+                fallback+(profile.isTrieSaturated()
+                        ? "sample vocabulary filled a whole TrieBuffer"
+                        : "estimated "+profile.getEstimatedTrieNodes()+" trie nodes do not fit in one TrieBuffer")
+        );
+    }
+
+    public InputProfile getProfile() {
+        return profile;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public int getTrieCapacity() {
+        return trie_capacity;
+    }
+
+    public long getMemoryBudgetBytes() {
+        return memory_budget_bytes;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return "EngineSelection{engine="+engine
+                +", trie_capacity="+trie_capacity
+                +", memory_budget_bytes="+memory_budget_bytes
+                +", parallelism="+parallelism
+                +", reason="+reason
+                +"}";
+    }
+}
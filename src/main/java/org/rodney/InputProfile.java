@@ -0,0 +1,356 @@
+package org.rodney;
+
+import org.rodney.trie.TrieBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Estimate the shape of an input file from a sample, before choosing a word count engine.
+ * <br/>
+ * The file is memory mapped and a number of equally spaced blocks are read (the whole file if it is smaller than
+ * the sample). The sampled words are counted in a TrieBuffer, using the same word rules as the trie engines.
+ * <br/>
+ * Estimates:
+ * <ul>
+ *     <li>token count : sampled tokens scaled by file size</li>
+ *     <li>distinct words : Heaps' law V(n) = K*n^beta, fitted by least squares on log V vs log n at
+ *     the last TAIL_CHECKPOINTS power of 2 token counts in the sample. The early checkpoints are left out: almost
+ *     every early token is a new word, and fitting them would over-extrapolate a vocabulary that has stopped
+ *     growing. If the slope of the fit, or of the last doubling of the sampled tokens, is below SATURATED_HEAPS_BETA,
+ *     the vocabulary is treated as saturated and the estimate is the sampled vocabulary.</li>
+ *     <li>trie nodes : distinct words times the sampled trie nodes per distinct word</li>
+ *     <li>average word length and the ratio of non-Ascii bytes</li>
+ *     <li>whether the sampled blocks are valid UTF-8; a word count engine that decodes the file must not be chosen
+ *     for e.g. a Latin-1 file</li>
+ * </ul>
+ */
+public class InputProfile {
+
+    public static final long DEFAULT_SAMPLE_BYTES = 4L<<20;
+    public static final int DEFAULT_SAMPLE_BLOCKS = 16;
+    private static final byte SPACE_CHAR = (byte)' ';
+
+    // the sample trie holds as many nodes as a TrieBuffer can address
+    private static final int SAMPLE_TRIE_CAPACITY = Character.MAX_VALUE;
+    // first token count at which a Heaps' law point is recorded
+    private static final long FIRST_CHECKPOINT = 16;
+    private static final int MAX_CHECKPOINTS = 64;
+    // number of checkpoints at the end of the sample used for the Heaps' law fit; each one doubles the tokens
+    public static final int TAIL_CHECKPOINTS = 4;
+    // a vocabulary that grows by less than 10% when the tokens double has been seen almost completely by the sample
+    public static final double SATURATED_HEAPS_BETA = Math.log(1.10)/Math.log(2);
+    private static final int UTF8_DECODE_BUFFER_SIZE = 1<<14;
+
+    protected final Path path;
+    protected long file_size;
+    protected long sampled_bytes = 0;
+    protected long non_ascii_bytes = 0;
+    protected long sampled_tokens = 0;
+    protected long sampled_letters = 0;
+    protected int sampled_distinct_words = 0;
+    protected int sampled_trie_nodes = 0;
+    // true if the sample trie ran out of nodes; the vocabulary is too big for a single TrieBuffer
+    protected boolean trie_saturated = false;
+    // false if a sampled block has a byte sequence that is not UTF-8
+    protected boolean valid_utf8 = true;
+
+    // Heaps' law fit
+    protected double heaps_k = 1.0;
+    protected double heaps_beta = 1.0;
+    protected boolean vocabulary_saturated = false;
+
+    // sampling state
+    private TrieBuffer sample_trie;
+    private char current_trie_index = 0;
+    private final double[] checkpoint_log_tokens = new double[MAX_CHECKPOINTS];
+    private final double[] checkpoint_log_distinct = new double[MAX_CHECKPOINTS];
+    private int checkpoint_count = 0;
+    private long next_checkpoint = FIRST_CHECKPOINT;
+    private long last_checkpoint_tokens = 0;
+
+    protected InputProfile(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Sample a file with the default sample size
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static InputProfile sample(Path path) throws IOException {
+        return sample(path, DEFAULT_SAMPLE_BYTES, DEFAULT_SAMPLE_BLOCKS);
+    }
+
+    /**
+     * Sample a file
+     * @param path
+     * @param sample_bytes total number of bytes to sample
+     * @param sample_blocks number of equally spaced blocks to sample
+     * @return
+     * @throws IOException
+     */
+    public static InputProfile sample(Path path, long sample_bytes, int sample_blocks) throws IOException {
+        InputProfile profile = new InputProfile(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            profile.file_size = channel.size();
+            profile.sample_trie = new TrieBuffer(SAMPLE_TRIE_CAPACITY);
+            if (profile.file_size<=sample_bytes) {
+                sample_blocks = 1;
+                sample_bytes = profile.file_size;
+            }
+            long block_size = Math.max(1, sample_bytes/sample_blocks);
+            long stride = profile.file_size/sample_blocks;
+            for (int i=0;i<sample_blocks && !profile.trie_saturated;i++) {
+                long block_start = i*stride;
+                long block_length = Math.min(block_size, profile.file_size-block_start);
+                if (block_length<=0) {
+                    break;
+                }
+                MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, block_start, block_length);
+                profile.sample_block(block, block_start!=0, block_start+block_length==profile.file_size);
+            }
+        }
+        profile.finish_sample();
+        return profile;
+    }
+
+    private void sample_block(MappedByteBuffer block, boolean skip_partial_word, boolean end_of_file) {
+        int position = 0;
+        int limit = block.limit();
+        if (skip_partial_word) {
+            // the block probably starts in the middle of a word
+            while (position<limit && !TrieBuffer.is_space(block.get(position))) {
+                position++;
+            }
+        }
+        if (valid_utf8) {
+            // the block starts at a space or at the start of the file, so it does not start inside a UTF-8 sequence
+            valid_utf8 = is_valid_utf8(block.duplicate().position(position), end_of_file);
+        }
+        for (;position<limit;position++) {
+            byte b = block.get(position);
+            sampled_bytes++;
+            if (b<0) {
+                non_ascii_bytes++;
+            }
+            if (!parse_next_char(b)) {
+                return;
+            }
+        }
+        // a word that runs past the end of the block is counted as is
+        parse_next_char(SPACE_CHAR);
+    }
+
+    /**
+     * Returns true if the remaining bytes of a buffer decode as UTF-8
+     * @param buffer
+     * @param end_of_input false if the buffer may end inside a UTF-8 sequence that continues after it
+     */
+    protected static boolean is_valid_utf8(ByteBuffer buffer, boolean end_of_input) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        CharBuffer chars = CharBuffer.allocate(UTF8_DECODE_BUFFER_SIZE);
+        while (true) {
+            CoderResult result = decoder.decode(buffer, chars, end_of_input);
+            if (result.isError()) {
+                return false;
+            }
+            if (result.isUnderflow()) {
+                return true;
+            }
+            chars.clear();
+        }
+    }
+
+    /**
+     * @return false if the sample trie is full
+     */
+    private boolean parse_next_char(byte b) {
+        boolean in_word = current_trie_index!=0;
+        if (!sample_trie.can_get_next_trie(current_trie_index, b)) {
+            trie_saturated = true;
+            current_trie_index = 0;
+            return false;
+        }
+        current_trie_index = sample_trie.parse_next_char(current_trie_index, b);
+        if (TrieBuffer.to_lower_case(b)!=0) {
+            sampled_letters++;
+        } else if (in_word && current_trie_index==0) {
+            // a word just ended
+            sampled_tokens++;
+            if (sampled_tokens>=next_checkpoint) {
+                add_checkpoint();
+                next_checkpoint *= 2;
+            }
+        }
+        return true;
+    }
+
+    private void add_checkpoint() {
+        if (checkpoint_count<MAX_CHECKPOINTS) {
+            checkpoint_log_tokens[checkpoint_count] = Math.log(sampled_tokens);
+            checkpoint_log_distinct[checkpoint_count] = Math.log(sample_trie.getWordCount());
+            checkpoint_count++;
+        }
+        last_checkpoint_tokens = sampled_tokens;
+    }
+
+    private void finish_sample() {
+        // always fit the last point, so that small samples still get a curve through their end
+        if (sampled_tokens>0 && sampled_tokens!=last_checkpoint_tokens) {
+            add_checkpoint();
+        }
+        sampled_distinct_words = sample_trie.getWordCount();
+        sampled_trie_nodes = sample_trie.getNodeCount();
+        sample_trie = null;
+        fit_heaps_law();
+    }
+
+    private void fit_heaps_law() {
+        int first = Math.max(0, checkpoint_count-TAIL_CHECKPOINTS);
+        int fit_count = checkpoint_count-first;
+        if (fit_count<2) {
+            // not enough data for a curve: assume every token is a new word
+            heaps_k = 1.0;
+            heaps_beta = 1.0;
+            return;
+        }
+        double mean_x = 0, mean_y = 0;
+        for (int i=first;i<checkpoint_count;i++) {
+            mean_x += checkpoint_log_tokens[i];
+            mean_y += checkpoint_log_distinct[i];
+        }
+        mean_x /= fit_count;
+        mean_y /= fit_count;
+        double covariance = 0, variance = 0;
+        for (int i=first;i<checkpoint_count;i++) {
+            double dx = checkpoint_log_tokens[i]-mean_x;
+            covariance += dx*(checkpoint_log_distinct[i]-mean_y);
+            variance += dx*dx;
+        }
+        heaps_beta = variance==0 ? 1.0 : Math.max(0.0, Math.min(1.0, covariance/variance));
+        heaps_k = Math.exp(mean_y-heaps_beta*mean_x);
+        vocabulary_saturated = heaps_beta<SATURATED_HEAPS_BETA || last_doubling_beta()<SATURATED_HEAPS_BETA;
+    }
+
+    /**
+     * Returns the Heaps' law slope over the last doubling of the sampled tokens, or more if the checkpoints are sparse
+     */
+    private double last_doubling_beta() {
+        int last = checkpoint_count-1;
+        int previous = last-1;
+        while (previous>0 && checkpoint_log_tokens[last]-checkpoint_log_tokens[previous]<Math.log(2)) {
+            previous--;
+        }
+        return (checkpoint_log_distinct[last]-checkpoint_log_distinct[previous])
+                /(checkpoint_log_tokens[last]-checkpoint_log_tokens[previous]);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getFileSize() {
+        return file_size;
+    }
+
+    public long getSampledBytes() {
+        return sampled_bytes;
+    }
+
+    public long getSampledTokens() {
+        return sampled_tokens;
+    }
+
+    public int getSampledDistinctWords() {
+        return sampled_distinct_words;
+    }
+
+    public boolean isTrieSaturated() {
+        return trie_saturated;
+    }
+
+    public double getHeapsK() {
+        return heaps_k;
+    }
+
+    public double getHeapsBeta() {
+        return heaps_beta;
+    }
+
+    /**
+     * Returns true if the sampled vocabulary has stopped growing, so the sample has seen almost every word
+     */
+    public boolean isVocabularySaturated() {
+        return vocabulary_saturated;
+    }
+
+    /**
+     * Returns true if every sampled block decodes as UTF-8. Bytes that were not sampled are not checked.
+     */
+    public boolean isValidUtf8() {
+        return valid_utf8;
+    }
+
+    public double getNonAsciiRatio() {
+        return sampled_bytes==0 ? 0.0 : non_ascii_bytes/(double)sampled_bytes;
+    }
+
+    public double getAverageWordLength() {
+        return sampled_tokens==0 ? 0.0 : sampled_letters/(double)sampled_tokens;
+    }
+
+    /**
+     * Returns the estimated number of tokens in the whole file
+     */
+    public long getEstimatedTokens() {
+        if (sampled_bytes==0) {
+            return 0;
+        }
+        return Math.round(sampled_tokens*(file_size/(double)sampled_bytes));
+    }
+
+    /**
+     * Returns the estimated number of distinct words in the whole file, from the Heaps' law fit
+     */
+    public long getEstimatedDistinctWords() {
+        if (vocabulary_saturated) {
+            return sampled_distinct_words;
+        }
+        long tokens = getEstimatedTokens();
+        long estimate = Math.round(heaps_k*Math.pow(tokens, heaps_beta));
+        return Math.max(sampled_distinct_words, Math.min(estimate, tokens));
+    }
+
+    /**
+     * Returns the estimated number of TrieBuffer nodes needed for the whole file, including the root node
+     */
+    public long getEstimatedTrieNodes() {
+        if (sampled_distinct_words==0) {
+            return 1;
+        }
+        double nodes_per_word = (sampled_trie_nodes-1)/(double)sampled_distinct_words;
+        return 1+Math.round(getEstimatedDistinctWords()*nodes_per_word);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "InputProfile{path=%s, file_size=%d, sampled_bytes=%d, sampled_tokens=%d, sampled_distinct=%d, "
+                        +"estimated_tokens=%d, heaps_k=%.3f, heaps_beta=%.3f, vocabulary_saturated=%b, estimated_distinct=%d, "
+                        +"estimated_trie_nodes=%d, average_word_length=%.2f, non_ascii_ratio=%.4f, valid_utf8=%b, trie_saturated=%b}",
+                path, file_size, sampled_bytes, sampled_tokens, sampled_distinct_words,
+                getEstimatedTokens(), heaps_k, heaps_beta, vocabulary_saturated, getEstimatedDistinctWords(),
+                getEstimatedTrieNodes(), getAverageWordLength(), getNonAsciiRatio(), valid_utf8, trie_saturated
+        );
+    }
+}
@@ -1,5 +1,6 @@
 package org.rodney;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Comparator;
@@ -7,6 +8,7 @@ import java.util.Map;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class MemoryRegexWordCount {
     private static final String input_file = "src/main/resources/kjvbible.txt";
@@ -15,12 +17,7 @@ public class MemoryRegexWordCount {
         Path filePath = Path.of(input_file);
         String content = Files.readString(filePath).toLowerCase();
         System.out.println("content.length="+content.length());
-        Map<String,Long> word_counts = word_pattern.splitAsStream(content)
-                .collect(
-                        Collectors.groupingBy(
-                                Function.identity(),
-                                Collectors.counting()
-                        ));
+        Map<String,Long> word_counts = count_words(content, false);
 
         word_counts.entrySet().stream()
                 .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
@@ -29,4 +26,40 @@ public class MemoryRegexWordCount {
                         String.format("%8d  %s",entry.getValue(), entry.getKey())
                 ));
     }
+
+    /**
+     * Read a whole file into memory and count its whitespace separated words.
+     * @param filePath
+     * @param parallel split and count the words with a parallel stream
+     * @return word counts
+     * @throws IOException
+     */
+    public static Map<String,Long> count_words(Path filePath, boolean parallel) throws IOException {
+        return count_words(Files.readString(filePath).toLowerCase(), parallel);
+    }
+
+    /**
+     * Count the whitespace separated words of a string.
+     * @param content text that is already converted to lower case
+     * @param parallel split and count the words with a parallel stream
+     * @return word counts
+     */
+    public static Map<String,Long> count_words(String content, boolean parallel) {
+        Stream<String> words = word_pattern.splitAsStream(content)
+                .filter(word -> word.length()>0);
+        if (parallel) {
+            return words.parallel()
+                    .collect(
+                            Collectors.groupingByConcurrent(
+                                    Function.identity(),
+                                    Collectors.counting()
+                            ));
+        }
+        return words
+                .collect(
+                        Collectors.groupingBy(
+                                Function.identity(),
+                                Collectors.counting()
+                        ));
+    }
 }
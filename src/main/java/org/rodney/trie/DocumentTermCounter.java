@@ -0,0 +1,162 @@
+package org.rodney.trie;
+
+import java.util.Arrays;
+
+import static org.rodney.trie.TrieBuffer.*;
+
+/**
+ * Compute a sparse term frequency vector for each document in a stream of small documents.
+ * <br/>
+ * Words are mapped to dense term ids by a shared TermDictionary. The term counts of the current document are kept
+ * in a scratch array indexed by term id; only the slots touched by the document are reset when the document ends,
+ * so the cost of a document is proportional to its length and not to the size of the dictionary.
+ * <br/>
+ * When a document ends, its term vector is handed to a DocumentVectorConsumer as two parallel int arrays
+ * (term ids in ascending order, and their counts). These arrays are reused for the next document, so a
+ * consumer that keeps a vector must copy it. After the scratch arrays have grown to the dictionary size,
+ * counting allocates nothing.
+ * <br/>
+ * The corpus counts and document frequencies of the dictionary are only updated when a document ends. If the
+ * dictionary runs out of trie nodes in the middle of a document, the document is discarded and an
+ * IllegalStateException is thrown; the dictionary is unchanged apart from the new, uncounted words.
+ * A document of N bytes needs at most N free trie nodes, so callers can check TermDictionary.getFreeNodeCount()
+ * before each document and roll over to a new dictionary in time.
+ * <br/>
+ * <b>NOTE:</b> this class is not thread safe. Use one DocumentTermCounter per thread, sharing nothing, or feed one
+ * DocumentTermCounter from one thread.
+ */
+public class DocumentTermCounter {
+
+    /**
+     * Receives one sparse term frequency vector per document
+     */
+    public interface DocumentVectorConsumer {
+        /**
+         * @param document_id sequential document number, starting at 0
+         * @param term_ids distinct term ids of the document in ascending order; only valid during this call
+         * @param term_counts term_counts[i] is the count of term_ids[i]; only valid during this call
+         * @param length number of distinct terms in the document
+         */
+        void accept(int document_id, int[] term_ids, int[] term_counts, int length);
+    }
+
+    private static final int INITIAL_DOCUMENT_TERMS = 256;
+
+    protected final TermDictionary dictionary;
+
+    // term counts of the current document, indexed by term id
+    protected int[] scratch_counts = new int[INITIAL_DOCUMENT_TERMS];
+    // term ids with a non-zero scratch count
+    protected int[] touched_terms = new int[INITIAL_DOCUMENT_TERMS];
+    protected int touched_count = 0;
+    protected int[] vector_counts = new int[INITIAL_DOCUMENT_TERMS];
+
+    protected char current_trie_index = CHAR_0;
+    protected int next_document_id = 0;
+
+    public DocumentTermCounter(TermDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public TermDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Count the words in a whole document and emit its term vector
+     * @param buffer
+     * @param offset
+     * @param length
+     * @param consumer
+     * @return the document id
+     */
+    public int count_document(byte[] buffer, int offset, int length, DocumentVectorConsumer consumer) {
+        parse(buffer, offset, length);
+        return end_document(consumer);
+    }
+
+    /**
+     * Count the words in part of the current document
+     * @param buffer
+     * @param offset
+     * @param length
+     */
+    public void parse(byte[] buffer, int offset, int length) {
+        for (int i=offset;i<offset+length;i++) {
+            parse_next_char(buffer[i]);
+        }
+    }
+
+    /**
+     * Count the next character of the current document
+     * @param next_char
+     * @throws IllegalStateException if the dictionary is full; the current document is discarded
+     */
+    public void parse_next_char(byte next_char) {
+        if (is_space(next_char)) {
+            end_word();
+        } else {
+            if (!dictionary.can_get_next_trie(current_trie_index, next_char)) {
+                discard_document();
+                throw new IllegalStateException(
+                        "term dictionary is full: "+dictionary.getCapacity()+" trie nodes; document discarded"
+                );
+            }
+            current_trie_index = dictionary.get_next_trie(current_trie_index, next_char);
+        }
+    }
+
+    /**
+     * End the current document: emit its term vector and reset the touched scratch slots.
+     * @param consumer
+     * @return the document id
+     */
+    public int end_document(DocumentVectorConsumer consumer) {
+        end_word();
+        int document_id = next_document_id++;
+
+        // sparse vectors are emitted in ascending term id order
+        Arrays.sort(touched_terms, 0, touched_count);
+        for (int i=0;i<touched_count;i++) {
+            int term_id = touched_terms[i];
+            vector_counts[i] = scratch_counts[term_id];
+            scratch_counts[term_id] = 0;
+        }
+        dictionary.add_document(touched_terms, vector_counts, touched_count);
+        consumer.accept(document_id, touched_terms, vector_counts, touched_count);
+        touched_count = 0;
+        return document_id;
+    }
+
+    /**
+     * Drop the current document without emitting it or counting it in the dictionary.
+     * The next document continues with the same document id.
+     */
+    public void discard_document() {
+        for (int i=0;i<touched_count;i++) {
+            scratch_counts[touched_terms[i]] = 0;
+        }
+        touched_count = 0;
+        current_trie_index = CHAR_0;
+    }
+
+    private void end_word() {
+        if (current_trie_index==CHAR_0) {
+            return;
+        }
+        int term_id = dictionary.get_term_id(current_trie_index);
+        current_trie_index = CHAR_0;
+
+        if (term_id>=scratch_counts.length) {
+            scratch_counts = Arrays.copyOf(scratch_counts, Math.max(scratch_counts.length*2, term_id+1));
+        }
+        if (scratch_counts[term_id]++==0) {
+            // first occurrence of this term in the document
+            if (touched_count==touched_terms.length) {
+                touched_terms = Arrays.copyOf(touched_terms, touched_terms.length*2);
+                vector_counts = Arrays.copyOf(vector_counts, vector_counts.length*2);
+            }
+            touched_terms[touched_count++] = term_id;
+        }
+    }
+}
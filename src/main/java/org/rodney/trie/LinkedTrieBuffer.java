@@ -0,0 +1,84 @@
+package org.rodney.trie;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A TrieBuffer that also records the parent node and letter of every allocated trie node.
+ * <br/>
+ * The parent links allow the word of any trie node to be rebuilt without walking the whole trie,
+ * which means the logical index of a word's terminal trie node can be used as a word id.
+ * <br/>
+ * The parent links cost 3 extra bytes per trie node.
+ */
+public class LinkedTrieBuffer extends TrieBuffer {
+
+    // parent_index[n] is the logical index of the parent of trie node n
+    protected final char[] parent_index;
+    // node_letter[n] is the lower case letter that leads from the parent node to trie node n
+    protected final byte[] node_letter;
+
+    public LinkedTrieBuffer(int capacity) {
+        super(capacity);
+        this.parent_index = new char[capacity];
+        this.node_letter = new byte[capacity];
+    }
+
+    @Override
+    public char get_next_trie(char current_trie_node_index, byte next_letter) {
+        byte next_letter_lower = to_lower_case(next_letter);
+        if (next_letter_lower==CHAR_0) {
+            return current_trie_node_index;
+        }
+        int next_letter_offset = compute_trie_node_letter_offset(current_trie_node_index, next_letter_lower);
+        boolean allocate = trie_buffer[next_letter_offset]==CHAR_0;
+        char next_trie_node_index = super.get_next_trie(current_trie_node_index, next_letter_lower);
+        if (allocate) {
+            // a new trie node was allocated; remember how we got here
+            parent_index[next_trie_node_index] = current_trie_node_index;
+            node_letter[next_trie_node_index] = next_letter_lower;
+        }
+        return next_trie_node_index;
+    }
+
+    /**
+     * Returns the number of letters in the word that ends at a trie node.
+     * @param trie_index logical trie node index
+     * @return 0 for the root node
+     */
+    public int get_word_length(char trie_index) {
+        int length = 0;
+        while (trie_index!=CHAR_0) {
+            trie_index = parent_index[trie_index];
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Copy the letters of the word that ends at a trie node into a byte array.
+     * @param trie_index logical trie node index
+     * @param dest destination array; must have room for get_word_length(trie_index) bytes
+     * @param offset offset in dest of the first letter
+     * @return number of letters copied
+     */
+    public int copy_word(char trie_index, byte[] dest, int offset) {
+        int length = get_word_length(trie_index);
+        // fill in the letters from the last letter back to the first
+        for (int i=offset+length-1;i>=offset;i--) {
+            dest[i] = node_letter[trie_index];
+            trie_index = parent_index[trie_index];
+        }
+        return length;
+    }
+
+    /**
+     * Returns the word that ends at a trie node.
+     * @param trie_index logical trie node index
+     * @return
+     */
+    public String get_word(char trie_index) {
+        byte[] letters = new byte[get_word_length(trie_index)];
+        copy_word(trie_index, letters, 0);
+        return new String(letters, StandardCharsets.US_ASCII);
+    }
+}
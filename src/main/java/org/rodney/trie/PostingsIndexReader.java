@@ -0,0 +1,230 @@
+package org.rodney.trie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.rodney.trie.TrieBuffer.*;
+
+/**
+ * Query a positional inverted index written by PostingsIndexer, directly from a memory mapped file.
+ * <br/>
+ * File format, all values big endian:
+ * <ul>
+ *     <li>header : int magic, int version, int node_count, int reserved, long postings_size</li>
+ *     <li>term dictionary : node_count TrieBuffer nodes of TRIE_ENTRY_ARRAY_SIZE chars each;
+ *     the node counter of a word is the number of its postings</li>
+ *     <li>postings offsets : node_count longs; the offset of each node's postings in the postings section</li>
+ *     <li>postings : delta encoded varint positions</li>
+ * </ul>
+ * A lookup walks the mapped trie nodes one letter at a time, so nothing is loaded up front.
+ * <br/>
+ * <b>NOTE:</b> the index file must be smaller than 2GB, the limit of a single mapping.
+ */
+public class PostingsIndexReader implements AutoCloseable {
+
+    public static final int MAGIC = 0x57435049; // "WCPI"
+    public static final int VERSION = 1;
+    protected static final int HEADER_SIZE = 24;
+
+    /**
+     * Streams the positions of one word
+     */
+    public static class PositionCursor {
+        protected final ByteBuffer postings;
+        protected int remaining;
+        protected int read_position;
+        protected long position = 0;
+
+        PositionCursor(ByteBuffer postings, int read_position, int count) {
+            this.postings = postings;
+            this.read_position = read_position;
+            this.remaining = count;
+        }
+
+        public boolean hasNext() {
+            return remaining>0;
+        }
+
+        /**
+         * Returns the next position; only call this if hasNext() is true
+         */
+        public long next() {
+            long delta = 0;
+            int shift = 0;
+            while (true) {
+                byte b = postings.get(read_position++);
+                delta |= (long)(b & 0x7F)<<shift;
+                if (b>=0) {
+                    break;
+                }
+                shift += 7;
+            }
+            remaining--;
+            position += delta;
+            return position;
+        }
+    }
+
+    protected final FileChannel channel;
+    protected final MappedByteBuffer mapped;
+    protected final int node_count;
+    protected final CharBuffer trie_nodes;
+    protected final LongBuffer postings_offsets;
+    protected final ByteBuffer postings;
+
+    /**
+     * Map an index file
+     * @param path
+     * @throws IOException if the file is not an index file
+     */
+    public PostingsIndexReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size<HEADER_SIZE || size>Integer.MAX_VALUE) {
+                throw new IOException("not a postings index file: "+path);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (mapped.getInt(0)!=MAGIC || mapped.getInt(4)!=VERSION) {
+                throw new IOException("not a postings index file: "+path);
+            }
+            node_count = mapped.getInt(8);
+            long postings_size = mapped.getLong(16);
+            int trie_size = node_count*TRIE_ENTRY_BYTES;
+            int offsets_size = node_count*Long.BYTES;
+            if (HEADER_SIZE+(long)trie_size+offsets_size+postings_size!=size) {
+                throw new IOException("truncated postings index file: "+path);
+            }
+            trie_nodes = mapped.slice(HEADER_SIZE, trie_size).asCharBuffer();
+            postings_offsets = mapped.slice(HEADER_SIZE+trie_size, offsets_size).asLongBuffer();
+            postings = mapped.slice(HEADER_SIZE+trie_size+offsets_size, (int)postings_size);
+        } catch (IOException|RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public int getNodeCount() {
+        return node_count;
+    }
+
+    /**
+     * Look up a word in the mapped term dictionary
+     * @param word alphabetic characters are converted to lower case; non-alphabetic characters are skipped
+     * @return logical index of the word's trie node, or 0 if the word is not in the index
+     */
+    public char find_word(String word) {
+        return TrieBuffer.find_word(trie_nodes, word);
+    }
+
+    /**
+     * Returns the number of occurrences of a word
+     * @param word
+     * @return
+     */
+    public int get_occurrence_count(String word) {
+        char trie_index = find_word(word);
+        return trie_index==CHAR_0 ? 0 : get_trie_node_count(trie_nodes, trie_index);
+    }
+
+    /**
+     * Stream the positions of a word in ascending order
+     * @param word
+     * @return a cursor; empty if the word is not in the index
+     */
+    public PositionCursor positions(String word) {
+        char trie_index = find_word(word);
+        if (trie_index==CHAR_0) {
+            return new PositionCursor(postings, 0, 0);
+        }
+        return new PositionCursor(
+                postings,
+                (int)postings_offsets.get(trie_index),
+                get_trie_node_count(trie_nodes, trie_index)
+        );
+    }
+
+    /**
+     * Returns all positions of a word in ascending order
+     * @param word
+     * @return
+     */
+    public long[] get_positions(String word) {
+        PositionCursor cursor = positions(word);
+        long[] result = new long[cursor.remaining];
+        for (int i=0;i<result.length;i++) {
+            result[i] = cursor.next();
+        }
+        return result;
+    }
+
+    /**
+     * Find the occurrences of first that are followed by an occurrence of second within max_distance.
+     * With byte offset positions, a phrase "first second" separated by one space is found with
+     * max_distance = length of first + 1.
+     * <br/>
+     * The occurrence of second must be after the occurrence of first, so a word never matches itself. Use
+     * find_cooccurrences(first, second, 0, max_distance) when positions are document ids and both words may
+     * occur in the same document.
+     * @param first
+     * @param second
+     * @param max_distance max value of (second position - first position); must be positive
+     * @return positions of first, in ascending order
+     */
+    public long[] find_cooccurrences(String first, String second, long max_distance) {
+        return find_cooccurrences(first, second, 1, max_distance);
+    }
+
+    /**
+     * Find the occurrences of first that are followed by an occurrence of second at a distance between
+     * min_distance and max_distance. With document id positions, find_cooccurrences(first, second, 0, 0) finds
+     * the documents that contain both words.
+     * <br/>
+     * Both postings lists are merged in one pass.
+     * @param first
+     * @param second
+     * @param min_distance min value of (second position - first position); must not be negative
+     * @param max_distance max value of (second position - first position); must not be less than min_distance
+     * @return positions of first, in ascending order
+     */
+    public long[] find_cooccurrences(String first, String second, long min_distance, long max_distance) {
+        if (min_distance<0 || max_distance<min_distance) {
+            throw new IllegalArgumentException("bad distance range: "+min_distance+".."+max_distance);
+        }
+        PositionCursor first_cursor = positions(first);
+        PositionCursor second_cursor = positions(second);
+        long[] matches = new long[first_cursor.remaining];
+        int match_count = 0;
+
+        long second_position = -1;
+        boolean second_valid = false;
+        while (first_cursor.hasNext()) {
+            long first_position = first_cursor.next();
+            // skip the second positions that are less than min_distance after first_position
+            while ((!second_valid || second_position-first_position<min_distance) && second_cursor.hasNext()) {
+                second_position = second_cursor.next();
+                second_valid = true;
+            }
+            if (!second_valid || second_position-first_position<min_distance) {
+                break;
+            }
+            if (second_position-first_position<=max_distance) {
+                matches[match_count++] = first_position;
+            }
+        }
+        long[] result = new long[match_count];
+        System.arraycopy(matches, 0, result, 0, match_count);
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,327 @@
+package org.rodney.trie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.rodney.trie.TrieBuffer.*;
+
+/**
+ * Count words and build a positional inverted index in the same pass.
+ * <br/>
+ * The terminal trie node of a word is its word id. Every occurrence of a word appends a position to the word's
+ * postings list: by default the byte offset of the first character of the word, or any other non-decreasing
+ * position such as a document id (see add_occurrence()).
+ * <br/>
+ * Postings are stored as delta encoded varints in a single pooled byte[] that is carved into fixed size blocks.
+ * Each block ends with the pool offset of the word's next block, so a postings list is a chain of blocks and no
+ * per-word objects are allocated.
+ * <br/>
+ * write() persists the index; see PostingsIndexReader for the file format.
+ */
+public class PostingsIndexer {
+
+    // block layout: BLOCK_DATA_SIZE postings bytes followed by a 4 byte next-block pool offset
+    protected static final int BLOCK_SIZE = 32;
+    protected static final int BLOCK_DATA_SIZE = BLOCK_SIZE-4;
+    private static final int INITIAL_POOL_SIZE = 1<<16;
+    // pool offset 0 is never a block, so that 0 can mean "no postings yet"
+    private static final int NO_BLOCK = 0;
+    private static final int WRITE_BUFFER_SIZE = 1<<20;
+
+    protected final TrieBuffer trie;
+
+    // postings block pool
+    protected byte[] pool = new byte[INITIAL_POOL_SIZE];
+    protected int next_block = BLOCK_SIZE;
+
+    // per trie node postings state
+    protected final int[] node_first_block;
+    protected final int[] node_write_position;
+    protected final long[] node_last_position;
+
+    // parse state
+    protected char current_trie_index = CHAR_0;
+    protected boolean in_word = false;
+    protected long word_start = 0;
+    protected long next_position = 0;
+
+    /**
+     * Initialize the indexer
+     * @param capacity max number of trie nodes
+     */
+    public PostingsIndexer(int capacity) {
+        this.trie = new TrieBuffer(capacity);
+        this.node_first_block = new int[capacity];
+        this.node_write_position = new int[capacity];
+        this.node_last_position = new long[capacity];
+    }
+
+    public TrieBuffer getTrieBuffer() {
+        return trie;
+    }
+
+    /**
+     * Index the next bytes of the input. Byte offsets continue from the previous call.
+     * @param buffer
+     * @param offset
+     * @param length
+     */
+    public void parse(byte[] buffer, int offset, int length) {
+        for (int i=offset;i<offset+length;i++) {
+            parse_next_char(buffer[i]);
+        }
+    }
+
+    /**
+     * Index the remaining bytes of a buffer, e.g. a MappedByteBuffer. Byte offsets continue from the previous call.
+     * @param buffer
+     */
+    public void parse(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            parse_next_char(buffer.get());
+        }
+    }
+
+    /**
+     * Index the next input byte
+     * @param next_char
+     */
+    public void parse_next_char(byte next_char) {
+        if (is_space(next_char)) {
+            end_word();
+        } else {
+            if (!in_word) {
+                in_word = true;
+                word_start = next_position;
+            }
+            current_trie_index = trie.get_next_trie(current_trie_index, next_char);
+        }
+        next_position++;
+    }
+
+    /**
+     * Index the word in progress, if any. Call this after the last buffer has been parsed.
+     */
+    public void end_word() {
+        char trie_index = current_trie_index;
+        current_trie_index = CHAR_0;
+        in_word = false;
+        if (trie_index!=CHAR_0) {
+            // the counter is the number of postings, so only count a posting that was written
+            add_posting(trie_index, word_start);
+            trie.increment_trie_node_count(trie_index);
+        }
+    }
+
+    /**
+     * Count a word and add a position to its postings list, e.g. a document id.
+     * @param word
+     * @param position must not be less than the last position of this word
+     * @return logical index of the trie node for the last character in the word, or 0 if the word has no letters
+     * @throws IllegalArgumentException if position is less than the last position of this word; the word's count
+     * and postings are unchanged
+     */
+    public char add_occurrence(String word, long position) {
+        char trie_index = CHAR_0;
+        for (int i=0;i<word.length();i++) {
+            trie_index = trie.get_next_trie(trie_index, (byte)word.charAt(i));
+        }
+        if (trie_index!=CHAR_0) {
+            add_posting(trie_index, position);
+            trie.increment_trie_node_count(trie_index);
+        }
+        return trie_index;
+    }
+
+    /**
+     * Append a position to the postings list of a trie node. The postings state of the node is only updated once
+     * the posting has been written, so a rejected position leaves the list unchanged.
+     */
+    protected void add_posting(char trie_index, long position) {
+        int first_block = node_first_block[trie_index];
+        int write_position;
+        long delta;
+        if (first_block==NO_BLOCK) {
+            first_block = allocate_block();
+            write_position = first_block;
+            delta = position;
+        } else {
+            write_position = node_write_position[trie_index];
+            delta = position-node_last_position[trie_index];
+            if (delta<0) {
+                throw new IllegalArgumentException(
+                        "positions must not decrease: "+position+"<"+node_last_position[trie_index]
+                );
+            }
+        }
+
+        // write the delta as a varint: 7 bits per byte, low bits first, high bit set on all but the last byte
+        while (true) {
+            if ((write_position % BLOCK_SIZE)==BLOCK_DATA_SIZE) {
+                // end of block: chain a new block
+                int block = allocate_block();
+                put_int(pool, write_position, block);
+                write_position = block;
+            }
+            if ((delta & ~0x7FL)==0) {
+                pool[write_position++] = (byte)delta;
+                break;
+            }
+            pool[write_position++] = (byte)((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        node_first_block[trie_index] = first_block;
+        node_write_position[trie_index] = write_position;
+        node_last_position[trie_index] = position;
+    }
+
+    private int allocate_block() {
+        int block = next_block;
+        next_block += BLOCK_SIZE;
+        if (next_block>pool.length) {
+            if (pool.length>Integer.MAX_VALUE/2) {
+                throw new IllegalStateException("postings pool is full");
+            }
+            pool = Arrays.copyOf(pool, pool.length*2);
+        }
+        return block;
+    }
+
+    /**
+     * Returns the number of postings bytes of a trie node
+     */
+    protected long postings_length(char trie_index) {
+        int block = node_first_block[trie_index];
+        if (block==NO_BLOCK) {
+            return 0;
+        }
+        int end = node_write_position[trie_index];
+        long length = 0;
+        while (end<block || end>block+BLOCK_DATA_SIZE) {
+            length += BLOCK_DATA_SIZE;
+            block = get_int(pool, block+BLOCK_DATA_SIZE);
+        }
+        return length+(end-block);
+    }
+
+    /**
+     * Returns the positions of a word, decoded from the in-memory postings
+     * @param trie_index logical index of the trie node for the last character of a word
+     * @return
+     */
+    public long[] get_positions(char trie_index) {
+        long[] positions = new long[trie.get_trie_node_count(trie_index)];
+        int block = node_first_block[trie_index];
+        int read_position = block;
+        long position = 0;
+        for (int i=0;i<positions.length;i++) {
+            long delta = 0;
+            int shift = 0;
+            while (true) {
+                if (read_position==block+BLOCK_DATA_SIZE) {
+                    block = get_int(pool, read_position);
+                    read_position = block;
+                }
+                byte b = pool[read_position++];
+                delta |= (long)(b & 0x7F)<<shift;
+                if (b>=0) {
+                    break;
+                }
+                shift += 7;
+            }
+            position += delta;
+            positions[i] = position;
+        }
+        return positions;
+    }
+
+    /**
+     * Write the index to a file. The file is created or truncated.
+     * @param path
+     * @throws IOException
+     */
+    public void write(Path path) throws IOException {
+        end_word();
+        int node_count = trie.getNodeCount();
+        long[] postings_offsets = new long[node_count];
+        long postings_size = 0;
+        for (int i=0;i<node_count;i++) {
+            postings_offsets[i] = postings_size;
+            postings_size += postings_length((char)i);
+        }
+
+        try (FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        )) {
+            ByteBuffer out = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            out.putInt(PostingsIndexReader.MAGIC);
+            out.putInt(PostingsIndexReader.VERSION);
+            out.putInt(node_count);
+            out.putInt(0);
+            out.putLong(postings_size);
+
+            // term dictionary: the trie nodes as is; the node counters are the postings counts
+            char[] trie_buffer = trie.trie_buffer;
+            for (int i=0;i<node_count*TRIE_ENTRY_ARRAY_SIZE;i++) {
+                if (out.remaining()<Character.BYTES) {
+                    flush(channel, out);
+                }
+                out.putChar(trie_buffer[i]);
+            }
+            for (int i=0;i<node_count;i++) {
+                if (out.remaining()<Long.BYTES) {
+                    flush(channel, out);
+                }
+                out.putLong(postings_offsets[i]);
+            }
+
+            // postings: each node's block chain, concatenated
+            for (int i=0;i<node_count;i++) {
+                int block = node_first_block[i];
+                if (block==NO_BLOCK) {
+                    continue;
+                }
+                int end = node_write_position[i];
+                while (true) {
+                    boolean last_block = end>=block && end<=block+BLOCK_DATA_SIZE;
+                    int length = last_block ? end-block : BLOCK_DATA_SIZE;
+                    if (out.remaining()<length) {
+                        flush(channel, out);
+                    }
+                    out.put(pool, block, length);
+                    if (last_block) {
+                        break;
+                    }
+                    block = get_int(pool, block+BLOCK_DATA_SIZE);
+                }
+            }
+            flush(channel, out);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private static void put_int(byte[] dest, int position, int value) {
+        TrieResultWriter.put_int(dest, position, value);
+    }
+
+    private static int get_int(byte[] src, int position) {
+        return ((src[position] & 0xFF)<<24)
+                | ((src[position+1] & 0xFF)<<16)
+                | ((src[position+2] & 0xFF)<<8)
+                | (src[position+3] & 0xFF);
+    }
+}
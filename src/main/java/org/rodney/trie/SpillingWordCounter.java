@@ -0,0 +1,405 @@
+package org.rodney.trie;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static org.rodney.trie.TrieBuffer.*;
+
+/**
+ * Count words with a hard memory budget, spilling to disk when the vocabulary does not fit in memory.
+ * <br/>
+ * Words are counted in a single TrieBuffer whose size is derived from the memory budget. When the TrieBuffer
+ * runs out of trie nodes, its words and counts are written to disk as a sorted run (a lexicographic trie walk
+ * produces sorted output for free), the TrieBuffer is cleared, and counting continues.
+ * <br/>
+ * merge() writes the exact word counts in lexicographic order with streaming k-way merges of at most
+ * getMergeFanIn() runs at a time. When there are more runs than that, the oldest runs are merged into intermediate
+ * runs first, so the number of open runs and read buffers is bounded. If nothing was spilled, the TrieBuffer is
+ * written directly.
+ * <br/>
+ * The memory budget covers the TrieBuffer and the merge buffers: one read buffer per merged run plus the run write
+ * buffer. The TrieBuffer gets as much of the budget as it can use; the rest raises the merge fan-in, and then the
+ * size of the merge buffers. Budgets below MIN_MEMORY_BUDGET or above MAX_MEMORY_BUDGET are rejected.
+ * The buffer of the TrieResultWriter that is passed to merge() is not part of the budget.
+ * <br/>
+ * Runs use the TrieResultWriter BINARY record format and are deleted once they have been merged.
+ * <br/>
+ * <b>NOTE:</b> word counts are unsigned 32 bit integers; merge() throws ArithmeticException if a merged count
+ * does not fit.
+ */
+public class SpillingWordCounter {
+
+    public static final int MAX_TRIE_CAPACITY = TrieBuffer.MAX_CAPACITY;
+    private static final int MIN_TRIE_CAPACITY = 2;
+    // merge buffers: one per merged run, plus one to write intermediate runs
+    private static final int MIN_RUN_BUFFER_SIZE = 1<<16;
+    private static final int MAX_RUN_BUFFER_SIZE = 1<<24;
+    public static final int MIN_MERGE_FAN_IN = 2;
+    // bounds the number of open run files
+    private static final int MAX_MERGE_FAN_IN = 1024;
+    public static final long MIN_MERGE_BUDGET = (MIN_MERGE_FAN_IN+1)*(long)MIN_RUN_BUFFER_SIZE;
+    public static final long MIN_MEMORY_BUDGET = MIN_TRIE_CAPACITY*(long)TRIE_ENTRY_BYTES+MIN_MERGE_BUDGET;
+    public static final long MAX_MEMORY_BUDGET =
+            MAX_TRIE_CAPACITY*(long)TRIE_ENTRY_BYTES+(MAX_MERGE_FAN_IN+1)*(long)MAX_RUN_BUFFER_SIZE;
+    private static final int INITIAL_WORD_SIZE = 64;
+
+    protected final TrieBuffer trie;
+    protected final int merge_fan_in;
+    protected final int run_buffer_size;
+    protected final Path spill_directory;
+    protected final TrieResultWriter run_writer;
+    protected final List<Path> runs = new ArrayList<>();
+
+    // letters of the word being parsed, so that it can be replayed into a cleared TrieBuffer
+    protected byte[] current_word = new byte[INITIAL_WORD_SIZE];
+    protected int current_word_length = 0;
+    protected char current_trie_index = CHAR_0;
+
+    /**
+     * Initialize the counter
+     * @param memory_budget_bytes max number of bytes for the TrieBuffer and the merge buffers
+     * @param spill_directory directory for the sorted runs
+     * @throws IllegalArgumentException if the budget is below MIN_MEMORY_BUDGET or above MAX_MEMORY_BUDGET
+     */
+    public SpillingWordCounter(long memory_budget_bytes, Path spill_directory) {
+        this.trie = new TrieBuffer(trie_capacity_for_budget(memory_budget_bytes));
+        this.merge_fan_in = merge_fan_in_for_budget(memory_budget_bytes);
+        this.run_buffer_size = run_buffer_size_for_budget(memory_budget_bytes);
+        this.spill_directory = spill_directory;
+        this.run_writer = new TrieResultWriter(TrieResultWriter.Format.BINARY, run_buffer_size);
+    }
+
+    /**
+     * Returns the memory budget for a TrieBuffer capacity and a merge fan-in, with the smallest merge buffers.
+     * @param trie_capacity
+     * @param merge_fan_in
+     * @return
+     */
+    public static long memory_budget_for(int trie_capacity, int merge_fan_in) {
+        return trie_capacity*(long)TRIE_ENTRY_BYTES+(merge_fan_in+1)*(long)MIN_RUN_BUFFER_SIZE;
+    }
+
+    /**
+     * Returns the number of trie nodes that fit in a memory budget, after the smallest merge buffers.
+     * @param memory_budget_bytes
+     * @return
+     */
+    public static int trie_capacity_for_budget(long memory_budget_bytes) {
+        check_budget(memory_budget_bytes);
+        return (int)Math.min((memory_budget_bytes-MIN_MERGE_BUDGET)/TRIE_ENTRY_BYTES, MAX_TRIE_CAPACITY);
+    }
+
+    /**
+     * Returns the max number of runs that are merged at a time with the part of a memory budget that
+     * the TrieBuffer does not use.
+     * @param memory_budget_bytes
+     * @return
+     */
+    public static int merge_fan_in_for_budget(long memory_budget_bytes) {
+        long merge_bytes = merge_budget(memory_budget_bytes);
+        return (int)Math.min(merge_bytes/MIN_RUN_BUFFER_SIZE-1, MAX_MERGE_FAN_IN);
+    }
+
+    /**
+     * Returns the size of each merge buffer: the part of a memory budget that the TrieBuffer does not use,
+     * divided between the merge_fan_in_for_budget() read buffers and the write buffer.
+     * @param memory_budget_bytes
+     * @return
+     */
+    public static int run_buffer_size_for_budget(long memory_budget_bytes) {
+        long merge_bytes = merge_budget(memory_budget_bytes);
+        return (int)Math.min(merge_bytes/(merge_fan_in_for_budget(memory_budget_bytes)+1), MAX_RUN_BUFFER_SIZE);
+    }
+
+    private static long merge_budget(long memory_budget_bytes) {
+        return memory_budget_bytes-trie_capacity_for_budget(memory_budget_bytes)*(long)TRIE_ENTRY_BYTES;
+    }
+
+    private static void check_budget(long memory_budget_bytes) {
+        if (memory_budget_bytes<MIN_MEMORY_BUDGET) {
+            throw new IllegalArgumentException(
+                    "memory budget is too small: "+memory_budget_bytes+"<"+MIN_MEMORY_BUDGET
+            );
+        }
+        if (memory_budget_bytes>MAX_MEMORY_BUDGET) {
+            throw new IllegalArgumentException(
+                    "memory budget can not be used: "+memory_budget_bytes+">"+MAX_MEMORY_BUDGET
+            );
+        }
+    }
+
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    public int getMergeFanIn() {
+        return merge_fan_in;
+    }
+
+    public int getRunBufferSize() {
+        return run_buffer_size;
+    }
+
+    public TrieBuffer getTrieBuffer() {
+        return trie;
+    }
+
+    /**
+     * Count the words in a buffer. A word may continue in the next buffer.
+     * @param buffer
+     * @param offset
+     * @param length
+     * @throws IOException if a run can not be written
+     */
+    public void parse(byte[] buffer, int offset, int length) throws IOException {
+        for (int i=offset;i<offset+length;i++) {
+            parse_next_char(buffer[i]);
+        }
+    }
+
+    /**
+     * Count the words in the remaining bytes of a buffer, e.g. a MappedByteBuffer. A word may continue in the next buffer.
+     * @param buffer
+     * @throws IOException if a run can not be written
+     */
+    public void parse(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            parse_next_char(buffer.get());
+        }
+    }
+
+    /**
+     * Count the next character
+     * @param next_char
+     * @throws IOException if a run can not be written
+     */
+    public void parse_next_char(byte next_char) throws IOException {
+        if (is_space(next_char)) {
+            end_word();
+            return;
+        }
+        byte letter = to_lower_case(next_char);
+        if (letter==CHAR_0) {
+            // skipped characters do not need to be replayed
+            return;
+        }
+        if (current_word_length==current_word.length) {
+            current_word = Arrays.copyOf(current_word, current_word.length*2);
+        }
+        current_word[current_word_length++] = letter;
+        if (trie.can_get_next_trie(current_trie_index, letter)) {
+            current_trie_index = trie.get_next_trie(current_trie_index, letter);
+        } else {
+            // TrieBuffer is full: spill it and replay the current word into the cleared TrieBuffer
+            spill();
+            replay_current_word();
+        }
+    }
+
+    /**
+     * Count the word in progress, if any. Call this after the last buffer has been parsed.
+     */
+    public void end_word() {
+        if (current_trie_index!=CHAR_0) {
+            trie.increment_trie_node_count(current_trie_index);
+            current_trie_index = CHAR_0;
+        }
+        current_word_length = 0;
+    }
+
+    /**
+     * Write the words in the TrieBuffer to a new sorted run and clear the TrieBuffer.
+     * The word in progress is not part of the run; it has no count yet.
+     * @throws IOException
+     */
+    protected void spill() throws IOException {
+        if (trie.getWordCount()>0) {
+            run_writer.write(trie, TrieResultWriter.Order.LEXICOGRAPHIC, new_run());
+        }
+        trie.clear();
+        current_trie_index = CHAR_0;
+    }
+
+    private Path new_run() throws IOException {
+        Path run = Files.createTempFile(spill_directory, "word-count-run-", ".bin");
+        runs.add(run);
+        return run;
+    }
+
+    private void replay_current_word() {
+        // every letter of the word needs a new trie node in the cleared TrieBuffer
+        if (current_word_length>trie.getFreeNodeCount()) {
+            throw new IllegalStateException(
+                    "word of length "+current_word_length+" does not fit in an empty TrieBuffer of capacity "
+                    +trie.getCapacity()
+            );
+        }
+        for (int i=0;i<current_word_length;i++) {
+            current_trie_index = trie.get_next_trie(current_trie_index, current_word[i]);
+        }
+    }
+
+    /**
+     * Write the exact word counts to a file in lexicographic order. The file is created or truncated.
+     * @param writer output record format
+     * @param path
+     * @return number of distinct words written
+     * @throws IOException
+     */
+    public long merge(TrieResultWriter writer, Path path) throws IOException {
+        try (FileChannel file_channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        )) {
+            return merge(writer, file_channel);
+        }
+    }
+
+    /**
+     * Write the exact word counts to a channel in lexicographic order.
+     * The channel is not closed. All runs are deleted, and the TrieBuffer is cleared.
+     * @param writer output record format
+     * @param out_channel
+     * @return number of distinct words written
+     * @throws IOException
+     */
+    public long merge(TrieResultWriter writer, WritableByteChannel out_channel) throws IOException {
+        end_word();
+        if (runs.isEmpty()) {
+            // everything fit in memory
+            long records = writer.write(trie, TrieResultWriter.Order.LEXICOGRAPHIC, out_channel);
+            trie.clear();
+            return records;
+        }
+        spill();
+
+        try {
+            // merge the oldest runs into a new run until a single merge can write the output
+            while (runs.size()>merge_fan_in) {
+                List<Path> merged_runs = new ArrayList<>(runs.subList(0, merge_fan_in));
+                try (FileChannel run_channel = FileChannel.open(new_run(), StandardOpenOption.WRITE)) {
+                    merge_runs(merged_runs, run_writer, run_channel);
+                }
+                runs.subList(0, merge_fan_in).clear();
+                for (Path run : merged_runs) {
+                    Files.delete(run);
+                }
+            }
+            return merge_runs(runs, writer, out_channel);
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            runs.clear();
+        }
+    }
+
+    /**
+     * Streaming k-way merge of sorted runs; the counts of the same word are added up.
+     * @return number of distinct words written
+     */
+    protected long merge_runs(List<Path> merged_runs, TrieResultWriter writer, WritableByteChannel out_channel)
+            throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(merged_runs.size(), RunReader::compare_words);
+        List<RunReader> readers = new ArrayList<>(merged_runs.size());
+        try {
+            for (Path run : merged_runs) {
+                RunReader reader = new RunReader(run, run_buffer_size);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            writer.begin(out_channel);
+            byte[] merged_word = new byte[INITIAL_WORD_SIZE];
+            while (!queue.isEmpty()) {
+                // take the smallest word, and add the counts of the same word from the other runs
+                RunReader smallest = queue.poll();
+                int merged_length = smallest.word_length;
+                if (merged_word.length<merged_length) {
+                    merged_word = new byte[smallest.word.length];
+                }
+                System.arraycopy(smallest.word, 0, merged_word, 0, merged_length);
+                long merged_count = smallest.count;
+                if (smallest.next()) {
+                    queue.add(smallest);
+                }
+                while (!queue.isEmpty() && queue.peek().is_word(merged_word, merged_length)) {
+                    RunReader same = queue.poll();
+                    merged_count += same.count;
+                    if (same.next()) {
+                        queue.add(same);
+                    }
+                }
+                if (merged_count>0xFFFFFFFFL) {
+                    throw new ArithmeticException("word count overflow: "+merged_count);
+                }
+                writer.write_record(merged_word, 0, merged_length, (int)merged_count);
+            }
+            return writer.end();
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Streams the BINARY records of one sorted run
+     */
+    protected static class RunReader {
+        protected final DataInputStream in;
+        protected byte[] word = new byte[INITIAL_WORD_SIZE];
+        protected int word_length = 0;
+        protected long count = 0;
+
+        RunReader(Path run, int buffer_size) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), buffer_size));
+        }
+
+        /**
+         * Read the next record
+         * @return false at the end of the run
+         */
+        boolean next() throws IOException {
+            try {
+                word_length = in.readInt();
+            } catch (EOFException ex) {
+                return false;
+            }
+            if (word.length<word_length) {
+                word = new byte[Math.max(word_length, word.length*2)];
+            }
+            in.readFully(word, 0, word_length);
+            count = in.readInt() & 0xFFFFFFFFL;
+            return true;
+        }
+
+        boolean is_word(byte[] other, int other_length) {
+            return Arrays.equals(word, 0, word_length, other, 0, other_length);
+        }
+
+        static int compare_words(RunReader a, RunReader b) {
+            return Arrays.compareUnsigned(a.word, 0, a.word_length, b.word, 0, b.word_length);
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.rodney.trie;
+
+import java.util.Arrays;
+
+/**
+ * A global term dictionary that maps words to dense integer term ids 0..getTermCount()-1.
+ * <br/>
+ * Words are stored in a LinkedTrieBuffer. A term id is assigned to a word's terminal trie node the first time
+ * the word is seen, so looking up a term id costs one trie descent and no allocation. The parent links turn a
+ * term id back into its word.
+ * <br/>
+ * The dictionary also keeps the corpus count of each word (in the TrieBuffer word counters)
+ * and the number of documents that contain each term, for TF-IDF weighting.
+ * <br/>
+ * The dictionary holds at most capacity-1 trie nodes; getFreeNodeCount() tells callers when to roll over to
+ * a new dictionary.
+ */
+public class TermDictionary extends LinkedTrieBuffer {
+
+    private static final int INITIAL_TERM_CAPACITY = 1024;
+    private static final int NO_TERM_ID = -1;
+
+    // node_term_id[n] is the term id + 1 of trie node n, or 0 if no term id was assigned yet
+    protected final int[] node_term_id;
+    // term_node[t] is the terminal trie node of term id t
+    protected char[] term_node = new char[INITIAL_TERM_CAPACITY];
+    protected int[] document_frequency = new int[INITIAL_TERM_CAPACITY];
+    protected int term_count = 0;
+    protected int document_count = 0;
+
+    public TermDictionary(int capacity) {
+        super(capacity);
+        this.node_term_id = new int[capacity];
+    }
+
+    public int getTermCount() {
+        return term_count;
+    }
+
+    public int getDocumentCount() {
+        return document_count;
+    }
+
+    /**
+     * Returns the term id of the word that ends at a trie node, assigning a new term id if needed.
+     * @param trie_index logical index of the trie node for the last character of a word
+     * @return
+     */
+    public int get_term_id(char trie_index) {
+        int term_id = node_term_id[trie_index]-1;
+        if (term_id==NO_TERM_ID) {
+            term_id = term_count++;
+            if (term_id==term_node.length) {
+                term_node = Arrays.copyOf(term_node, term_node.length*2);
+                document_frequency = Arrays.copyOf(document_frequency, document_frequency.length*2);
+            }
+            term_node[term_id] = trie_index;
+            node_term_id[trie_index] = term_id+1;
+        }
+        return term_id;
+    }
+
+    /**
+     * Returns the term id of a word, adding the word to the dictionary if needed.
+     * The corpus count of the word is not changed.
+     * @param word
+     * @return term id, or -1 if the word has no letters
+     */
+    public int get_term_id(String word) {
+        char trie_index = CHAR_0;
+        for (int i=0;i<word.length();i++) {
+            trie_index = get_next_trie(trie_index, (byte)word.charAt(i));
+        }
+        return trie_index==CHAR_0 ? NO_TERM_ID : get_term_id(trie_index);
+    }
+
+    /**
+     * Returns the word of a term id
+     * @param term_id
+     * @return
+     */
+    public String get_term(int term_id) {
+        return get_word(term_node[term_id]);
+    }
+
+    /**
+     * Returns the number of times the word of a term id occurred in all documents
+     * @param term_id
+     * @return
+     */
+    public int get_corpus_count(int term_id) {
+        return get_trie_node_count(term_node[term_id]);
+    }
+
+    /**
+     * Returns the number of documents that contain a term id
+     * @param term_id
+     * @return
+     */
+    public int get_document_frequency(int term_id) {
+        return document_frequency[term_id];
+    }
+
+    /**
+     * Record one document's distinct terms and their counts
+     * @param term_ids distinct term ids of the document
+     * @param term_counts term_counts[i] is the count of term_ids[i] in the document
+     * @param length number of term ids
+     */
+    protected void add_document(int[] term_ids, int[] term_counts, int length) {
+        for (int i=0;i<length;i++) {
+            int term_id = term_ids[i];
+            document_frequency[term_id]++;
+            char trie_index = term_node[term_id];
+            for (int c=0;c<term_counts[i];c++) {
+                increment_trie_node_count(trie_index);
+            }
+        }
+        document_count++;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        for (int i=0;i<term_count;i++) {
+            node_term_id[term_node[i]] = 0;
+        }
+        Arrays.fill(document_frequency, 0, term_count, 0);
+        term_count = 0;
+        document_count = 0;
+    }
+}
@@ -0,0 +1,98 @@
+package org.rodney.trie;
+
+/**
+ * A bounded min-heap of primitive long keys that keeps the K largest keys offered to it.
+ * <br/>
+ * The heap does not store payloads itself. Instead every heap entry owns a payload slot number 0..K-1,
+ * and offer() returns the slot number in which the caller should store the payload for the new key.
+ * When a key is evicted its slot is handed to the key that replaced it, so the caller can keep
+ * payloads in plain arrays of size K.
+ */
+class TopKHeap {
+    protected final long[] keys;
+    protected final int[] slots;
+    protected int size = 0;
+
+    TopKHeap(int k) {
+        keys = new long[k];
+        slots = new int[k];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Offer a key to the heap.
+     * @param key
+     * @return the payload slot for this key, or -1 if the key is not among the K largest keys
+     */
+    int offer(long key) {
+        if (size<keys.length) {
+            // heap is not full: append the key and sift it up
+            int slot = size;
+            int i = size++;
+            while (i>0) {
+                int parent = (i-1)>>>1;
+                if (keys[parent]<=key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                slots[i] = slots[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            slots[i] = slot;
+            return slot;
+        }
+        if (size==0 || key<=keys[0]) {
+            return -1;
+        }
+        // replace the smallest key and reuse its payload slot
+        int slot = slots[0];
+        sift_down(key, slot);
+        return slot;
+    }
+
+    /**
+     * Empty the heap, writing the payload slots in descending key order.
+     * @param slot_order receives the payload slots; must have room for size() entries
+     * @return number of payload slots written
+     */
+    int drain_descending(int[] slot_order) {
+        int count = size;
+        for (int i=count-1;i>=0;i--) {
+            slot_order[i] = slots[0];
+            size--;
+            if (size>0) {
+                sift_down(keys[size], slots[size]);
+            }
+        }
+        return count;
+    }
+
+    private void sift_down(long key, int slot) {
+        int i = 0;
+        while (true) {
+            int child = 2*i+1;
+            if (child>=size) {
+                break;
+            }
+            if (child+1<size && keys[child+1]<keys[child]) {
+                child++;
+            }
+            if (keys[child]>=key) {
+                break;
+            }
+            keys[i] = keys[child];
+            slots[i] = slots[child];
+            i = child;
+        }
+        keys[i] = key;
+        slots[i] = slot;
+    }
+}
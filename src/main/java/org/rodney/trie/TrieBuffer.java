@@ -1,5 +1,8 @@
 package org.rodney.trie;
 
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
 /**
  * Implement a Trie data structure in order to perform a word count for a body of text.
  * <br/>
@@ -35,11 +38,17 @@ public class TrieBuffer {
     protected static final int COUNTER_LOW_OFFSET = LETTERS_ARRAY_SIZE+COUNTER_ARRAY_SIZE-1;
     protected static final int COUNTER_HI_OFFSET = LETTERS_ARRAY_SIZE+COUNTER_ARRAY_SIZE-2;
     protected static final int TRIE_ENTRY_ARRAY_SIZE = LETTERS_ARRAY_SIZE+COUNTER_ARRAY_SIZE;
+    // memory used by one trie node
+    public static final int TRIE_ENTRY_BYTES = TRIE_ENTRY_ARRAY_SIZE*Character.BYTES;
+    // trie node indices are chars; this keeps the allocation index from wrapping around to 0
+    public static final int MAX_CAPACITY = Character.MAX_VALUE;
     
     protected final int capacity;
 
     // logical concatenation of all of the Trie node arrays
     protected final char[] trie_buffer;
+    // trie_buffer viewed as a CharBuffer, for the node helpers that are shared with mapped tries
+    protected final CharBuffer trie_nodes;
 
     // how many words are contained in this TrieBuffer
     protected int word_count = 0;
@@ -54,14 +63,60 @@ public class TrieBuffer {
      * @param capacity max number of trie nodes in this buffer.
      */
     public TrieBuffer(int capacity) {
+        if (capacity>MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be at most "+MAX_CAPACITY+": "+capacity);
+        }
         this.capacity = capacity;
         this.trie_buffer = new char[capacity*TRIE_ENTRY_ARRAY_SIZE];
+        this.trie_nodes = CharBuffer.wrap(trie_buffer);
     }
 
     public int getWordCount() {
         return word_count;
     }
 
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of trie nodes in use, including the root node
+     */
+    public int getNodeCount() {
+        return next_trie_node_allocation_index;
+    }
+
+    /**
+     * Returns the number of trie nodes that can still be allocated
+     */
+    public int getFreeNodeCount() {
+        return capacity-next_trie_node_allocation_index;
+    }
+
+    /**
+     * Returns true if get_next_trie() would succeed: next_letter is not alphabetic, the next trie node already
+     * exists, or a new trie node can still be allocated.
+     * @param current_trie_node_index logical index of current trie node
+     * @param next_letter will be converted to a lower case Ascii letter
+     * @return
+     */
+    public boolean can_get_next_trie(char current_trie_node_index, byte next_letter) {
+        byte next_letter_lower = to_lower_case(next_letter);
+        return next_letter_lower==CHAR_0
+                || trie_buffer[compute_trie_node_letter_offset(current_trie_node_index, next_letter_lower)]!=CHAR_0
+                || getFreeNodeCount()>0;
+    }
+
+    /**
+     * Remove all words from this TrieBuffer so that it can be reused.
+     * Only the trie nodes that have been allocated are zeroed.
+     */
+    public void clear() {
+        Arrays.fill(trie_buffer, 0, next_trie_node_allocation_index*TRIE_ENTRY_ARRAY_SIZE, (char)CHAR_0);
+        next_trie_node_allocation_index = 1;
+        word_count = 0;
+    }
+
     /**
      * Given a logic trie node index, compute its offset in trie_buffer array
      * @param trie_index
@@ -102,6 +157,27 @@ public class TrieBuffer {
         return compute_trie_buffer_offset(trie_index)+COUNTER_HI_OFFSET;
     }
 
+    /**
+     * Returns the count of the word that ends at a trie node.
+     * @param trie_index logical trie node index
+     * @return word count as an unsigned 32 bit integer; 0 if no word ends at this trie node
+     */
+    public int get_trie_node_count(char trie_index) {
+        return get_trie_node_count(trie_nodes, trie_index);
+    }
+
+    /**
+     * Returns the count of the word that ends at a trie node.
+     * @param trie_nodes trie nodes of TRIE_ENTRY_ARRAY_SIZE chars each, e.g. a TrieBuffer or a mapped index file
+     * @param trie_index logical trie node index
+     * @return word count as an unsigned 32 bit integer; 0 if no word ends at this trie node
+     */
+    public static int get_trie_node_count(CharBuffer trie_nodes, char trie_index) {
+        return (trie_nodes.get(compute_trie_node_count_hi_offset(trie_index))<<16)
+                |
+                trie_nodes.get(compute_trie_node_count_low_offset(trie_index));
+    }
+
     /**
      * Converts a character to a lower case character.
      * Characters between 'A' and 'Z' are converted to lower case.
@@ -153,16 +229,26 @@ public class TrieBuffer {
 
         // if there is no entry at next_trie_node_index, allocate new trie node
         if (next_trie_node_index==CHAR_0) {
-            next_trie_node_index = next_trie_node_allocation_index++;
-            if (next_trie_node_index>=capacity) {
-                throw new ArrayIndexOutOfBoundsException();
-            }
+            next_trie_node_index = allocate_trie_node();
             trie_buffer[next_letter_trie_node_index] = next_trie_node_index;
         }
         if (CHECKS) assert next_trie_node_index!=0;
         return next_trie_node_index;
     }
 
+    /**
+     * Allocate a new, zeroed trie node
+     * @return logical index of the new trie node
+     * @throws ArrayIndexOutOfBoundsException if the TrieBuffer is full; the TrieBuffer is unchanged
+     */
+    protected char allocate_trie_node() {
+        // check before allocating, so that a failed allocation leaves the TrieBuffer unchanged
+        if (next_trie_node_allocation_index>=capacity) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        return next_trie_node_allocation_index++;
+    }
+
     public static final boolean is_space(byte b) {
         return b>=0 && b<=SPACE_CHAR;
     }
@@ -213,6 +299,35 @@ public class TrieBuffer {
         return curr_trie_index;
     }
 
+    /**
+     * Look up a word without inserting it.
+     * @return logical index of the trie node for the last character in the word, or 0 if it is not in the trie
+     */
+    public char find_word(String word) {
+        return find_word(trie_nodes, word);
+    }
+
+    /**
+     * Look up a word without inserting it.
+     * @param trie_nodes trie nodes of TRIE_ENTRY_ARRAY_SIZE chars each, e.g. a TrieBuffer or a mapped index file
+     * @param word alphabetic characters are converted to lower case; non-alphabetic characters are skipped
+     * @return logical index of the trie node for the last character in the word, or 0 if it is not in the trie
+     */
+    public static char find_word(CharBuffer trie_nodes, String word) {
+        char trie_index = CHAR_0;
+        for (int i=0;i<word.length();i++) {
+            byte letter = to_lower_case((byte)word.charAt(i));
+            if (letter==CHAR_0) {
+                continue;
+            }
+            trie_index = trie_nodes.get(compute_trie_node_letter_offset(trie_index, letter));
+            if (trie_index==CHAR_0) {
+                return CHAR_0;
+            }
+        }
+        return trie_index;
+    }
+
     /**
      * Increment a word count in the trie node for the last character of a word
      * @param current_trie_node_index logical index of trie node for last characters of a word
@@ -0,0 +1,225 @@
+package org.rodney.trie;
+
+import java.util.Arrays;
+
+import static org.rodney.trie.TrieBuffer.*;
+
+/**
+ * Compare the word counts of two TrieBuffers, e.g. yesterday's corpus (before) and today's corpus (after).
+ * <br/>
+ * Both tries are walked in lockstep, one letter at a time, so the diff takes one pass over the combined trie nodes.
+ * A String is only created for a word that is part of the output:
+ * <ul>
+ *     <li>added words : words that only occur in the after trie</li>
+ *     <li>removed words : words that only occur in the before trie</li>
+ *     <li>top K absolute changes : words in both tries with the largest |after-before|</li>
+ *     <li>top K relative changes : words in both tries with the largest |after-before|/before</li>
+ * </ul>
+ * Apart from the output, the only memory used is the word stack and two K sized heaps.
+ */
+public class TrieDiff {
+
+    private static final int INITIAL_WORD_STACK_SIZE = 64;
+    private static final int ABSENT = -1;
+
+    /**
+     * The top K changed words, sorted by descending change.
+     */
+    public static class Changes {
+        protected final String[] words;
+        protected final long[] before_counts;
+        protected final long[] after_counts;
+        protected final TopKHeap heap;
+        protected int change_count = 0;
+
+        Changes(int k) {
+            words = new String[k];
+            before_counts = new long[k];
+            after_counts = new long[k];
+            heap = new TopKHeap(k);
+        }
+
+        public int getWordCount() {
+            return change_count;
+        }
+
+        public String get_word(int index) {
+            return words[index];
+        }
+
+        public long get_before_count(int index) {
+            return before_counts[index];
+        }
+
+        public long get_after_count(int index) {
+            return after_counts[index];
+        }
+
+        public long get_delta(int index) {
+            return after_counts[index]-before_counts[index];
+        }
+
+        /**
+         * Returns the payload slot if a word with this key made it into the heap, else -1.
+         * Only then is it worth creating a String for the word.
+         */
+        int offer(long key) {
+            return heap.offer(key);
+        }
+
+        void set(int slot, String word, long before_count, long after_count) {
+            words[slot] = word;
+            before_counts[slot] = before_count;
+            after_counts[slot] = after_count;
+        }
+
+        /**
+         * Re-order the payload arrays into descending key order
+         */
+        void finish() {
+            int[] order = new int[heap.size()];
+            change_count = heap.drain_descending(order);
+            String[] sorted_words = new String[change_count];
+            long[] sorted_before = new long[change_count];
+            long[] sorted_after = new long[change_count];
+            for (int i=0;i<change_count;i++) {
+                sorted_words[i] = words[order[i]];
+                sorted_before[i] = before_counts[order[i]];
+                sorted_after[i] = after_counts[order[i]];
+            }
+            System.arraycopy(sorted_words, 0, words, 0, change_count);
+            System.arraycopy(sorted_before, 0, before_counts, 0, change_count);
+            System.arraycopy(sorted_after, 0, after_counts, 0, change_count);
+        }
+    }
+
+    protected final TrieBuffer before;
+    protected final TrieBuffer after;
+    protected final int top_k;
+
+    // walk state
+    protected char[] before_buffer;
+    protected char[] after_buffer;
+    protected char[] char_stack = new char[INITIAL_WORD_STACK_SIZE];
+    protected int stack_depth = 0;
+
+    // results
+    protected WordsAndCounts added;
+    protected WordsAndCounts removed;
+    protected Changes absolute_changes;
+    protected Changes relative_changes;
+
+    /**
+     * Initialize the diff
+     * @param before the older word counts
+     * @param after the newer word counts
+     * @param top_k number of top absolute and relative changes to keep
+     */
+    public TrieDiff(TrieBuffer before, TrieBuffer after, int top_k) {
+        this.before = before;
+        this.after = after;
+        this.top_k = top_k;
+    }
+
+    /**
+     * Walk both tries and compute the diff
+     * @return this
+     */
+    public TrieDiff diff() {
+        before_buffer = before.trie_buffer;
+        after_buffer = after.trie_buffer;
+        stack_depth = 0;
+        // added/removed grow with the number of changed words, not with the size of the tries
+        added = new WordsAndCounts();
+        removed = new WordsAndCounts();
+        absolute_changes = new Changes(top_k);
+        relative_changes = new Changes(top_k);
+
+        diff_trie_node_recurse(0, 0);
+
+        // the lockstep walk visits words in lexicographic order
+        added.sort_by_count_descending(true);
+        removed.sort_by_count_descending(true);
+        absolute_changes.finish();
+        relative_changes.finish();
+        return this;
+    }
+
+    public WordsAndCounts getAddedWords() {
+        return added;
+    }
+
+    public WordsAndCounts getRemovedWords() {
+        return removed;
+    }
+
+    public Changes getAbsoluteChanges() {
+        return absolute_changes;
+    }
+
+    public Changes getRelativeChanges() {
+        return relative_changes;
+    }
+
+    /**
+     * Visit the same word in both tries.
+     * @param before_node logical trie node index in the before trie, or ABSENT
+     * @param after_node logical trie node index in the after trie, or ABSENT
+     */
+    protected void diff_trie_node_recurse(int before_node, int after_node) {
+        int before_start = before_node==ABSENT ? ABSENT : compute_trie_buffer_offset((char)before_node);
+        int after_start = after_node==ABSENT ? ABSENT : compute_trie_buffer_offset((char)after_node);
+        long before_count = before_node==ABSENT ? 0 : unsigned_count(before, before_node);
+        long after_count = after_node==ABSENT ? 0 : unsigned_count(after, after_node);
+
+        if (before_count==0) {
+            if (after_count!=0) {
+                added.add(stack_word(), (int)after_count);
+            }
+        } else if (after_count==0) {
+            removed.add(stack_word(), (int)before_count);
+        } else if (after_count!=before_count) {
+            long abs_delta = Math.abs(after_count-before_count);
+            offer_change(absolute_changes, abs_delta, before_count, after_count);
+            double relative_delta = abs_delta/(double)before_count;
+            // bits of a positive double sort in the same order as the double
+            offer_change(relative_changes, Double.doubleToLongBits(relative_delta), before_count, after_count);
+        }
+
+        for (int i=0;i<LETTERS_ARRAY_SIZE;i++) {
+            int next_before = before_start==ABSENT ? CHAR_0 : before_buffer[before_start+i];
+            int next_after = after_start==ABSENT ? CHAR_0 : after_buffer[after_start+i];
+            if (next_before==CHAR_0 && next_after==CHAR_0) {
+                continue;
+            }
+            push_letter(i);
+            diff_trie_node_recurse(
+                    next_before==CHAR_0 ? ABSENT : next_before,
+                    next_after==CHAR_0 ? ABSENT : next_after
+            );
+            stack_depth--;
+        } //endfor i
+    }
+
+    private void offer_change(Changes changes, long key, long before_count, long after_count) {
+        int slot = changes.offer(key);
+        if (slot>=0) {
+            changes.set(slot, stack_word(), before_count, after_count);
+        }
+    }
+
+    private static long unsigned_count(TrieBuffer trie, int trie_index) {
+        return Integer.toUnsignedLong(trie.get_trie_node_count((char)trie_index));
+    }
+
+    private String stack_word() {
+        return new String(char_stack, 0, stack_depth);
+    }
+
+    private void push_letter(int letter_index) {
+        if (stack_depth==char_stack.length) {
+            char_stack = Arrays.copyOf(char_stack, char_stack.length*2);
+        }
+        char_stack[stack_depth++] = (char)(LITTLE_A+letter_index);
+    }
+}
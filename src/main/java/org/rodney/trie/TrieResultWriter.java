@@ -0,0 +1,331 @@
+package org.rodney.trie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.rodney.trie.TrieBuffer.*;
+
+/**
+ * Write the words and word counts of a TrieBuffer to a file channel.
+ * <br/>
+ * The trie nodes are walked directly and every word is pushed as bytes onto a word stack,
+ * so no String is allocated per word. Each result record is formatted by hand into a large
+ * reusable byte buffer, which is flushed through a WritableByteChannel (usually a FileChannel)
+ * whenever it fills up.
+ * <br/>
+ * Supported record formats:
+ * <ul>
+ *     <li>TSV : <code>count TAB word NEWLINE</code></li>
+ *     <li>CSV : <code>count COMMA word NEWLINE</code></li>
+ *     <li>BINARY : <code>int32 word length, word bytes, int32 word count</code>; all ints are big endian</li>
+ * </ul>
+ * Supported record orders:
+ * <ul>
+ *     <li>LEXICOGRAPHIC : the natural order of the trie walk; no sorting is required</li>
+ *     <li>COUNT_DESCENDING : descending word count; ties are written in lexicographic order</li>
+ * </ul>
+ * <b>NOTE:</b> word counts are written as unsigned 32 bit integers, which is how TrieBuffer stores them.
+ */
+public class TrieResultWriter {
+
+    public enum Format { TSV, CSV, BINARY }
+
+    public enum Order { LEXICOGRAPHIC, COUNT_DESCENDING }
+
+    public static final int DEFAULT_BUFFER_SIZE = 1<<20;
+    // room for the largest formatted record header: 10 digits + separator, or 2 x int32
+    protected static final int MIN_BUFFER_SIZE = 32;
+    private static final int INITIAL_WORD_STACK_SIZE = 64;
+    private static final int INITIAL_WORD_ARENA_SIZE = 1<<16;
+
+    protected static final byte TAB_CHAR = (byte)'\t';
+    protected static final byte COMMA_CHAR = (byte)',';
+    protected static final byte NEWLINE_CHAR = (byte)'\n';
+    protected static final byte DIGIT_0 = (byte)'0';
+
+    protected final Format format;
+
+    // reusable output buffer; records are formatted directly into out_bytes
+    protected final ByteBuffer out_buffer;
+    protected final byte[] out_bytes;
+    protected int out_position = 0;
+    protected WritableByteChannel channel;
+
+    // trie walk state
+    protected char[] trie_buffer_local;
+    protected CharBuffer trie_nodes_local;
+    protected byte[] word_stack = new byte[INITIAL_WORD_STACK_SIZE];
+    protected int stack_depth = 0;
+    protected long record_count = 0;
+
+    // COUNT_DESCENDING state: all words are collected into a byte arena before sorting.
+    // These arrays are kept between calls to write() so that they can be reused.
+    protected byte[] word_arena = new byte[INITIAL_WORD_ARENA_SIZE];
+    protected int word_arena_length = 0;
+    protected int[] word_offsets = new int[0];
+    protected int[] word_counts = new int[0];
+    protected long[] sort_keys = new long[0];
+    protected int collected_word_count = 0;
+
+    public TrieResultWriter(Format format) {
+        this(format, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Initialize the result writer
+     * @param format record format
+     * @param buffer_size size in bytes of the reusable output buffer
+     */
+    public TrieResultWriter(Format format, int buffer_size) {
+        if (buffer_size<MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("buffer_size must be at least "+MIN_BUFFER_SIZE);
+        }
+        this.format = format;
+        this.out_buffer = ByteBuffer.allocate(buffer_size);
+        this.out_bytes = out_buffer.array();
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Write all of the words in a TrieBuffer to a file. The file is created or truncated.
+     * @param trie
+     * @param order
+     * @param path
+     * @return number of records written
+     * @throws IOException
+     */
+    public long write(TrieBuffer trie, Order order, Path path) throws IOException {
+        try (FileChannel file_channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        )) {
+            return write(trie, order, file_channel);
+        }
+    }
+
+    /**
+     * Write all of the words in a TrieBuffer to a channel.
+     * The channel is not closed.
+     * @param trie
+     * @param order
+     * @param out_channel
+     * @return number of records written
+     * @throws IOException
+     */
+    public long write(TrieBuffer trie, Order order, WritableByteChannel out_channel) throws IOException {
+        begin(out_channel);
+        trie_buffer_local = trie.trie_buffer;
+        trie_nodes_local = trie.trie_nodes;
+        stack_depth = 0;
+        try {
+            if (order==Order.LEXICOGRAPHIC) {
+                write_trie_node_recurse((char)0);
+            } else {
+                collect_words(trie);
+                write_collected_words_by_count_descending();
+            }
+        } finally {
+            trie_buffer_local = null;
+            trie_nodes_local = null;
+        }
+        return end();
+    }
+
+    /**
+     * Start writing records to a channel. Use this together with write_record() and end() when the
+     * records do not come from a single TrieBuffer walk.
+     * @param out_channel
+     */
+    public void begin(WritableByteChannel out_channel) {
+        channel = out_channel;
+        out_position = 0;
+        record_count = 0;
+    }
+
+    /**
+     * Flush any buffered records to the channel.
+     * @return number of records written since begin()
+     * @throws IOException
+     */
+    public long end() throws IOException {
+        flush();
+        channel = null;
+        return record_count;
+    }
+
+    /**
+     * Format one record into the output buffer
+     * @param word word bytes
+     * @param offset offset of the first word byte
+     * @param length number of word bytes
+     * @param count word count; treated as an unsigned integer
+     * @throws IOException
+     */
+    public void write_record(byte[] word, int offset, int length, int count) throws IOException {
+        if (format==Format.BINARY) {
+            ensure_capacity(4);
+            out_position = put_int(out_bytes, out_position, length);
+            put_bytes(word, offset, length);
+            ensure_capacity(4);
+            out_position = put_int(out_bytes, out_position, count);
+        } else {
+            ensure_capacity(MIN_BUFFER_SIZE);
+            out_position = put_unsigned_decimal(out_bytes, out_position, count);
+            out_bytes[out_position++] = format==Format.TSV ? TAB_CHAR : COMMA_CHAR;
+            put_bytes(word, offset, length);
+            ensure_capacity(1);
+            out_bytes[out_position++] = NEWLINE_CHAR;
+        }
+        record_count++;
+    }
+
+    protected void write_trie_node_recurse(char node_index) throws IOException {
+        int node_start = compute_trie_buffer_offset(node_index);
+        int word_count = get_trie_node_count(trie_nodes_local, node_index);
+        if (word_count!=0) {
+            write_record(word_stack, 0, stack_depth, word_count);
+        }
+
+        for (int i=0;i<LETTERS_ARRAY_SIZE;i++) {
+            char next_trie_node = trie_buffer_local[node_start+i];
+            if (next_trie_node==CHAR_0) {
+                continue;
+            }
+            push_letter(i);
+            write_trie_node_recurse(next_trie_node);
+            stack_depth--;
+        } //endfor i
+    }
+
+    protected void collect_words(TrieBuffer trie) {
+        int size = trie.getWordCount();
+        if (word_offsets.length<size+1) {
+            word_offsets = new int[size+1];
+            word_counts = new int[size];
+            sort_keys = new long[size];
+        }
+        word_arena_length = 0;
+        collected_word_count = 0;
+        collect_trie_node_recurse((char)0);
+        word_offsets[collected_word_count] = word_arena_length;
+    }
+
+    protected void collect_trie_node_recurse(char node_index) {
+        int node_start = compute_trie_buffer_offset(node_index);
+        int word_count = get_trie_node_count(trie_nodes_local, node_index);
+        if (word_count!=0) {
+            if (word_arena_length+stack_depth>word_arena.length) {
+                word_arena = Arrays.copyOf(word_arena, Math.max(word_arena.length*2, word_arena_length+stack_depth));
+            }
+            System.arraycopy(word_stack, 0, word_arena, word_arena_length, stack_depth);
+            word_offsets[collected_word_count] = word_arena_length;
+            word_counts[collected_word_count] = word_count;
+            word_arena_length += stack_depth;
+            collected_word_count++;
+        }
+
+        for (int i=0;i<LETTERS_ARRAY_SIZE;i++) {
+            char next_trie_node = trie_buffer_local[node_start+i];
+            if (next_trie_node==CHAR_0) {
+                continue;
+            }
+            push_letter(i);
+            collect_trie_node_recurse(next_trie_node);
+            stack_depth--;
+        } //endfor i
+    }
+
+    protected void write_collected_words_by_count_descending() throws IOException {
+        // pack (count, walk index) into one long so that a primitive sort orders by descending count;
+        // ties keep walk order, which is lexicographic.
+        for (int i=0;i<collected_word_count;i++) {
+            sort_keys[i] = WordsAndCounts.pack_count_descending(word_counts[i], i);
+        }
+        Arrays.parallelSort(sort_keys, 0, collected_word_count);
+        for (int i=0;i<collected_word_count;i++) {
+            int word_index = (int)sort_keys[i];
+            int word_start = word_offsets[word_index];
+            write_record(
+                    word_arena,
+                    word_start,
+                    word_offsets[word_index+1]-word_start,
+                    word_counts[word_index]
+            );
+        }
+    }
+
+    private void push_letter(int letter_index) {
+        if (stack_depth==word_stack.length) {
+            word_stack = Arrays.copyOf(word_stack, word_stack.length*2);
+        }
+        word_stack[stack_depth++] = (byte)(LITTLE_A+letter_index);
+    }
+
+    private void put_bytes(byte[] src, int offset, int length) throws IOException {
+        while (length>0) {
+            ensure_capacity(1);
+            int chunk = Math.min(length, out_bytes.length-out_position);
+            System.arraycopy(src, offset, out_bytes, out_position, chunk);
+            out_position += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    private void ensure_capacity(int bytes) throws IOException {
+        if (out_position+bytes>out_bytes.length) {
+            flush();
+        }
+    }
+
+    protected void flush() throws IOException {
+        out_buffer.clear();
+        out_buffer.limit(out_position);
+        while (out_buffer.hasRemaining()) {
+            channel.write(out_buffer);
+        }
+        out_position = 0;
+    }
+
+    /**
+     * Write a big endian int32 into a byte array
+     * @return position after the int
+     */
+    public static int put_int(byte[] dest, int position, int value) {
+        dest[position] = (byte)(value>>>24);
+        dest[position+1] = (byte)(value>>>16);
+        dest[position+2] = (byte)(value>>>8);
+        dest[position+3] = (byte)value;
+        return position+4;
+    }
+
+    /**
+     * Format an unsigned 32 bit integer as decimal Ascii digits into a byte array
+     * @return position after the last digit
+     */
+    public static int put_unsigned_decimal(byte[] dest, int position, int value) {
+        long remaining = value & 0xFFFFFFFFL;
+        // count the digits first, then fill them in from right to left
+        int digits = 1;
+        for (long v=remaining;v>=10;v/=10) {
+            digits++;
+        }
+        int end = position+digits;
+        for (int i=end-1;i>=position;i--) {
+            dest[i] = (byte)(DIGIT_0+(remaining%10));
+            remaining /= 10;
+        }
+        return end;
+    }
+}
@@ -1,5 +1,7 @@
 package org.rodney.trie;
 
+import java.util.Arrays;
+
 import static org.rodney.trie.TrieBuffer.*;
 
 
@@ -21,11 +23,7 @@ public class WalkTrieNodes {
 
     public void walk_trie_node_recurse(char node_index) {
         int node_start = compute_trie_buffer_offset(node_index);
-        int word_count =
-                (trie_buffer_local[node_start+LETTERS_ARRAY_SIZE]<<16)
-                        +
-                        (trie_buffer_local[node_start+LETTERS_ARRAY_SIZE+1])
-                ;
+        int word_count = get_trie_node_count(trie_local.trie_nodes, node_index);
         if (word_count!=0) {
             String word = new String(char_stack, 0, stack_depth);
             results.add(word, word_count);
@@ -37,7 +35,10 @@ public class WalkTrieNodes {
                 continue;
             }
             // found a new letter ...
-            //     push new letter onto char stack
+            //     push new letter onto char stack; words longer than any English word are still possible
+            if (stack_depth==char_stack.length) {
+                char_stack = Arrays.copyOf(char_stack, char_stack.length*2);
+            }
             char_stack[stack_depth++] = (char)(LITTLE_A+i);
 
             //     *recurse* to new trie node
@@ -55,7 +56,8 @@ public class WalkTrieNodes {
         results = new WordsAndCounts(word_count);
 
         walk_trie_node_recurse((char)0);
-        results.sort_by_count_descending();
+        // the walk visits words in lexicographic order
+        results.sort_by_count_descending(true);
         return results;
     }
 }
@@ -0,0 +1,365 @@
+package org.rodney.trie;
+
+import java.util.Arrays;
+
+/**
+ * A TrieBuffer that also maintains sliding-window word counts, e.g. "word counts for the last 5 minutes".
+ * <br/>
+ * Time is divided into epochs, and the window covers the current epoch plus the previous window_epochs-1 epochs.
+ * The caller advances the clock with advance_epoch(); this does not touch any trie node.
+ * <br/>
+ * Every word that was counted in the window owns a counter slot. A counter slot is a ring of window_epochs
+ * per-epoch counters plus the total for the window. Epochs that leave the window are subtracted lazily, the next
+ * time the slot is incremented or queried. When a slot's window count drops to zero, the slot is reclaimed to a
+ * free list and reused by the next word that needs one.
+ * <br/>
+ * The trie nodes of words that have left the window are reclaimed too, so a stream can run forever with a fixed
+ * capacity as long as the words of one window fit. When a slot is freed, the parent links are followed from the
+ * word's trie node up towards the root, and every node without children and without a counter slot is unlinked
+ * from its parent and put on a node free list, which is used before new trie nodes are allocated. Slots are freed
+ * by queries, and by a sweep of the live slots when the TrieBuffer has no free trie node left.
+ * <br/>
+ * The all-time word counts of the underlying TrieBuffer are maintained while a word's trie node is in use;
+ * the all-time count of a word is dropped when its trie node is reclaimed.
+ * <br/>
+ * <b>NOTE:</b> this class is not thread safe; queries must be interleaved with ingest on the same thread, and must
+ * not be made in the middle of a word, since they may reclaim the trie node of a partial word.
+ */
+public class WindowedTrieBuffer extends LinkedTrieBuffer {
+
+    private static final int INITIAL_SLOT_CAPACITY = 64;
+    private static final int NO_SLOT = 0;
+
+    protected final int window_epochs;
+    protected long current_epoch = 0;
+
+    // node_slot[n] is the counter slot of trie node n, or NO_SLOT
+    protected final int[] node_slot;
+
+    // counter slots; slot 0 is never used so that NO_SLOT can be 0
+    protected char[] slot_node;
+    protected long[] slot_last_epoch;
+    protected int[] slot_window_count;
+    // slot_epoch_counts[slot*window_epochs + epoch%window_epochs] is the count of one epoch in the window
+    protected int[] slot_epoch_counts;
+    protected int next_slot_allocation_index = 1;
+
+    // free list of reclaimed counter slots
+    protected int[] free_slots = new int[INITIAL_SLOT_CAPACITY];
+    protected int free_slot_count = 0;
+
+    // dense list of the slots in use, so that top-K queries do not scan the trie
+    protected int[] live_slots = new int[INITIAL_SLOT_CAPACITY];
+    protected int[] slot_live_position;
+    protected int live_slot_count = 0;
+
+    // free list of reclaimed trie nodes
+    protected final char[] free_nodes;
+    protected int free_node_count = 0;
+    // the trie node that get_next_trie() is extending; it must not be reclaimed by a sweep during the allocation
+    private char extending_trie_index = CHAR_0;
+
+    /**
+     * Initialize the WindowedTrieBuffer
+     * @param capacity max number of trie nodes in this buffer.
+     * @param window_epochs number of epochs in the sliding window
+     */
+    public WindowedTrieBuffer(int capacity, int window_epochs) {
+        super(capacity);
+        if (window_epochs<1) {
+            throw new IllegalArgumentException("window_epochs must be at least 1");
+        }
+        this.window_epochs = window_epochs;
+        this.node_slot = new int[capacity];
+        this.slot_node = new char[INITIAL_SLOT_CAPACITY];
+        this.slot_last_epoch = new long[INITIAL_SLOT_CAPACITY];
+        this.slot_window_count = new int[INITIAL_SLOT_CAPACITY];
+        this.slot_epoch_counts = new int[INITIAL_SLOT_CAPACITY*window_epochs];
+        this.slot_live_position = new int[INITIAL_SLOT_CAPACITY];
+        this.free_nodes = new char[capacity];
+    }
+
+    public int getWindowEpochs() {
+        return window_epochs;
+    }
+
+    public long getCurrentEpoch() {
+        return current_epoch;
+    }
+
+    /**
+     * Returns the number of words with a non-zero count in the window, as of the last query.
+     * Words whose counts have expired since then are only removed by the next query.
+     */
+    public int getLiveWordCount() {
+        return live_slot_count;
+    }
+
+    /**
+     * Returns the number of trie nodes in use, including the root node; reclaimed trie nodes are not in use
+     */
+    @Override
+    public int getNodeCount() {
+        return super.getNodeCount()-free_node_count;
+    }
+
+    @Override
+    public int getFreeNodeCount() {
+        return super.getFreeNodeCount()+free_node_count;
+    }
+
+    /**
+     * Start the next epoch. This is a constant time operation; expired epochs are subtracted lazily.
+     */
+    public void advance_epoch() {
+        current_epoch++;
+    }
+
+    /**
+     * Move the clock forward to an epoch, e.g. System.currentTimeMillis()/epoch_millis.
+     * @param epoch must not be less than the current epoch
+     */
+    public void advance_to_epoch(long epoch) {
+        if (epoch<current_epoch) {
+            throw new IllegalArgumentException("epoch can not move backwards: "+epoch+"<"+current_epoch);
+        }
+        current_epoch = epoch;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        for (int i=0;i<live_slot_count;i++) {
+            int ring_start = live_slots[i]*window_epochs;
+            Arrays.fill(slot_epoch_counts, ring_start, ring_start+window_epochs, 0);
+            node_slot[slot_node[live_slots[i]]] = NO_SLOT;
+        }
+        live_slot_count = 0;
+        free_slot_count = 0;
+        next_slot_allocation_index = 1;
+        free_node_count = 0;
+    }
+
+    @Override
+    public char get_next_trie(char current_trie_node_index, byte next_letter) {
+        extending_trie_index = current_trie_node_index;
+        try {
+            return super.get_next_trie(current_trie_node_index, next_letter);
+        } finally {
+            extending_trie_index = CHAR_0;
+        }
+    }
+
+    /**
+     * Reuse a reclaimed trie node if there is one. If the TrieBuffer is full, first sweep the live slots
+     * for words that have left the window.
+     */
+    @Override
+    protected char allocate_trie_node() {
+        if (free_node_count==0 && super.getFreeNodeCount()==0) {
+            expire_live_slots();
+        }
+        if (free_node_count>0) {
+            return free_nodes[--free_node_count];
+        }
+        return super.allocate_trie_node();
+    }
+
+    @Override
+    public void increment_trie_node_count(char current_trie_node_index) {
+        super.increment_trie_node_count(current_trie_node_index);
+
+        int slot = node_slot[current_trie_node_index];
+        if (slot==NO_SLOT) {
+            slot = allocate_slot(current_trie_node_index);
+        } else {
+            expire_slot(slot);
+        }
+        slot_epoch_counts[slot*window_epochs+(int)(current_epoch%window_epochs)]++;
+        slot_window_count[slot]++;
+    }
+
+    /**
+     * Returns the count of a word in the current window
+     * @param trie_index logical index of the trie node for the last character of a word
+     * @return
+     */
+    public int get_window_count(char trie_index) {
+        int slot = node_slot[trie_index];
+        if (slot==NO_SLOT) {
+            return 0;
+        }
+        expire_slot(slot);
+        int window_count = slot_window_count[slot];
+        if (window_count==0) {
+            free_slot(slot);
+        }
+        return window_count;
+    }
+
+    /**
+     * Returns the count of a word in the current window
+     * @param word
+     * @return
+     */
+    public int get_window_count(String word) {
+        char trie_index = find_word(word);
+        return trie_index==CHAR_0 ? 0 : get_window_count(trie_index);
+    }
+
+    /**
+     * Find the top K words in the current window. Only the counter slots in use are visited.
+     * Slots and trie nodes of words whose window count has dropped to zero are reclaimed first.
+     * @param k max number of words to return
+     * @return the top words, sorted in descending window count order
+     */
+    public WordsAndCounts top_window_counts(int k) {
+        TopKHeap heap = new TopKHeap(k);
+        char[] heap_nodes = new char[k];
+        int[] heap_counts = new int[k];
+
+        expire_live_slots();
+        for (int i=0;i<live_slot_count;i++) {
+            int slot = live_slots[i];
+            int window_count = slot_window_count[slot];
+            char trie_index = slot_node[slot];
+            // higher counts first; for equal counts prefer the lower trie node index
+            long key = ((long)window_count<<32) | (0xFFFFFFFFL-trie_index);
+            int heap_slot = heap.offer(key);
+            if (heap_slot>=0) {
+                heap_nodes[heap_slot] = trie_index;
+                heap_counts[heap_slot] = window_count;
+            }
+        }
+
+        int[] heap_order = new int[heap.size()];
+        int top_count = heap.drain_descending(heap_order);
+        WordsAndCounts results = new WordsAndCounts(top_count);
+        for (int i=0;i<top_count;i++) {
+            results.add(get_word(heap_nodes[heap_order[i]]), heap_counts[heap_order[i]]);
+        }
+        results.sort_by_count_descending();
+        return results;
+    }
+
+    /**
+     * Expire every live slot, and free the slots whose window count has dropped to zero
+     */
+    protected void expire_live_slots() {
+        // iterate backwards because free_slot() moves the last live slot into the freed position
+        for (int i=live_slot_count-1;i>=0;i--) {
+            int slot = live_slots[i];
+            expire_slot(slot);
+            if (slot_window_count[slot]==0) {
+                free_slot(slot);
+            }
+        }
+    }
+
+    /**
+     * Subtract the epochs that have left the window since this slot was last touched
+     */
+    protected void expire_slot(int slot) {
+        long last_epoch = slot_last_epoch[slot];
+        if (last_epoch==current_epoch) {
+            return;
+        }
+        int ring_start = slot*window_epochs;
+        if (current_epoch-last_epoch>=window_epochs) {
+            // the whole ring is stale
+            Arrays.fill(slot_epoch_counts, ring_start, ring_start+window_epochs, 0);
+            slot_window_count[slot] = 0;
+        } else {
+            // each epoch after last_epoch reuses the ring entry of an epoch that just left the window
+            for (long epoch=last_epoch+1;epoch<=current_epoch;epoch++) {
+                int ring_offset = ring_start+(int)(epoch%window_epochs);
+                slot_window_count[slot] -= slot_epoch_counts[ring_offset];
+                slot_epoch_counts[ring_offset] = 0;
+            }
+        }
+        slot_last_epoch[slot] = current_epoch;
+    }
+
+    protected int allocate_slot(char trie_index) {
+        int slot;
+        if (free_slot_count>0) {
+            slot = free_slots[--free_slot_count];
+        } else {
+            slot = next_slot_allocation_index++;
+            if (slot>=slot_node.length) {
+                grow_slots();
+            }
+        }
+        // reclaimed slots are already zeroed by expire_slot()
+        slot_node[slot] = trie_index;
+        slot_last_epoch[slot] = current_epoch;
+        slot_window_count[slot] = 0;
+        node_slot[trie_index] = slot;
+
+        if (live_slot_count==live_slots.length) {
+            live_slots = Arrays.copyOf(live_slots, live_slots.length*2);
+        }
+        slot_live_position[slot] = live_slot_count;
+        live_slots[live_slot_count++] = slot;
+        return slot;
+    }
+
+    protected void free_slot(int slot) {
+        char trie_index = slot_node[slot];
+        node_slot[trie_index] = NO_SLOT;
+
+        // remove from the live list by moving the last live slot into its position
+        int live_position = slot_live_position[slot];
+        int last_slot = live_slots[--live_slot_count];
+        live_slots[live_position] = last_slot;
+        slot_live_position[last_slot] = live_position;
+
+        if (free_slot_count==free_slots.length) {
+            free_slots = Arrays.copyOf(free_slots, free_slots.length*2);
+        }
+        free_slots[free_slot_count++] = slot;
+
+        reclaim_trie_nodes(trie_index);
+    }
+
+    /**
+     * Reclaim a trie node and its ancestors, up to the first one that is the root, has children or
+     * has a counter slot.
+     */
+    protected void reclaim_trie_nodes(char trie_index) {
+        while (trie_index!=CHAR_0
+                && trie_index!=extending_trie_index
+                && node_slot[trie_index]==NO_SLOT
+                && !has_children(trie_index)) {
+            char parent = parent_index[trie_index];
+            trie_buffer[compute_trie_node_letter_offset(parent, node_letter[trie_index])] = CHAR_0;
+            // child indices are all 0 already; only the word counter needs to be reset
+            if (get_trie_node_count(trie_index)!=0) {
+                word_count--;
+                trie_buffer[compute_trie_node_count_hi_offset(trie_index)] = CHAR_0;
+                trie_buffer[compute_trie_node_count_low_offset(trie_index)] = CHAR_0;
+            }
+            free_nodes[free_node_count++] = trie_index;
+            trie_index = parent;
+        }
+    }
+
+    private boolean has_children(char trie_index) {
+        int node_start = compute_trie_buffer_offset(trie_index);
+        for (int i=0;i<LETTERS_ARRAY_SIZE;i++) {
+            if (trie_buffer[node_start+i]!=CHAR_0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void grow_slots() {
+        int new_capacity = slot_node.length*2;
+        slot_node = Arrays.copyOf(slot_node, new_capacity);
+        slot_last_epoch = Arrays.copyOf(slot_last_epoch, new_capacity);
+        slot_window_count = Arrays.copyOf(slot_window_count, new_capacity);
+        slot_epoch_counts = Arrays.copyOf(slot_epoch_counts, new_capacity*window_epochs);
+        slot_live_position = Arrays.copyOf(slot_live_position, new_capacity);
+    }
+}
@@ -1,27 +1,52 @@
 package org.rodney.trie;
 
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
 import java.util.stream.IntStream;
 
 /**
  * Accumulate words and word counts during a TrieBuffer node walk.
  * Once all of the words and counts have been pushed into this class,
  * then sort by descending word count order.
+ * <br/>
+ * Words with the same count are sorted in ascending word order, so the ranking is the same on every run.
+ * <br/>
+ * The sort runs in parallel on the common ForkJoinPool once there are enough words.
  */
 public class WordsAndCounts {
-    protected final String[] words;
-    protected final int[] counts;
+    private static final int INITIAL_SIZE = 16;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX_BUCKETS = 1<<RADIX_BITS;
+    // fewer words than this per chunk are not worth a parallel task
+    private static final int MIN_SORT_CHUNK_SIZE = 1<<13;
 
-    protected Integer[] count_descending_indices;
+    protected String[] words;
+    protected int[] counts;
+    // only the buffers of WordsAndCounts() grow; a sized WordsAndCounts holds at most size words
+    protected final boolean growable;
+
+    protected int[] count_descending_indices;
     int word_index = 0;
 
+    /**
+     * Initialize empty word and count buffers that grow as words are added,
+     * for when the number of words is not known up front
+     */
+    public WordsAndCounts() {
+        words = new String[INITIAL_SIZE];
+        counts = new int[INITIAL_SIZE];
+        growable = true;
+    }
+
     /**
      * Initialize the word and count buffers
-     * @param size
+     * @param size max number of words
      */
     public WordsAndCounts(int size) {
         words = new String[size];
         counts = new int[size];
+        growable = false;
     }
 
     public int getWordCount() {
@@ -34,30 +59,191 @@ public class WordsAndCounts {
      * @param count
      */
     public void add(String word, int count) {
+        if (growable && word_index==words.length) {
+            words = Arrays.copyOf(words, words.length*2);
+            counts = Arrays.copyOf(counts, counts.length*2);
+        }
         words[word_index] = word;
         counts[word_index] = count;
         word_index++;
     }
 
     /**
-     * Sort by descending word count order.
+     * Sort by descending word count order; word counts are treated as unsigned integers.
+     * Words with the same count are sorted by word.
      * Only call this method once all of the words have been added.
      */
     public void sort_by_count_descending() {
+        sort_by_count_descending(false);
+    }
+
+    /**
+     * Sort by descending word count order; word counts are treated as unsigned integers.
+     * Only call this method once all of the words have been added.
+     * @param words_in_order true if the words were added in ascending word order, as by a TrieBuffer walk;
+     *                       then equal counts are already in word order and are not compared.
+     *                       Checked when assertions are enabled.
+     */
+    void sort_by_count_descending(boolean words_in_order) {
+        int chunk_count = (int)Math.min(ForkJoinPool.getCommonPoolParallelism(), word_index/MIN_SORT_CHUNK_SIZE);
+        sort_by_count_descending(words_in_order, Math.max(1, chunk_count));
+    }
+
+    /**
+     * The sort is a stable LSD radix sort of the word indices, one byte of the count per pass, that ping-pongs
+     * between the result int[] and one scratch int[] of the same size. Passes in which every count has the same
+     * byte, e.g. the high bytes of small counts, are skipped.
+     * <br/>
+     * Each pass splits the indices into chunk_count chunks. The chunks build their byte histograms in parallel,
+     * the histograms are prefix summed into a bucket offset per chunk and byte, in chunk order within each
+     * bucket so the pass stays stable, and then the chunks scatter in parallel.
+     * @param words_in_order see sort_by_count_descending(boolean)
+     * @param chunk_count number of chunks sorted in parallel; 1 sorts on the calling thread
+     */
+    void sort_by_count_descending(boolean words_in_order, int chunk_count) {
+        assert !words_in_order || is_in_word_order() : "words were not added in ascending word order";
         // we will sort the *index* of the word counts instead of the actual word counts.
         // that way, we can use the sorted index to access either the word or the count from
         // the associated arrays.
-        count_descending_indices = new Integer[word_index];
+        int[] sorted = new int[word_index];
+        int[] scratch = new int[word_index];
+        int chunk_size = (word_index+chunk_count-1)/chunk_count;
+        int[][] bucket_starts = new int[chunk_count][RADIX_BUCKETS];
+        int[] initial = sorted;
+        for_each_chunk(chunk_count, chunk -> {
+            for (int i=chunk*chunk_size, end=Math.min(word_index, i+chunk_size);i<end;i++) {
+                initial[i] = i;
+            }
+        });
+        // a single word is already sorted
+        for (int shift=0;word_index>1 && shift<Integer.SIZE;shift+=RADIX_BITS) {
+            int digit_shift = shift;
+            int[] from = sorted;
+            int[] to = scratch;
+            for_each_chunk(chunk_count, chunk -> {
+                int[] histogram = bucket_starts[chunk];
+                Arrays.fill(histogram, 0);
+                for (int i=chunk*chunk_size, end=Math.min(word_index, i+chunk_size);i<end;i++) {
+                    histogram[descending_digit(counts[from[i]], digit_shift)]++;
+                }
+            });
+            int first_digit = descending_digit(counts[0], shift);
+            int first_digit_count = 0;
+            for (int chunk=0;chunk<chunk_count;chunk++) {
+                first_digit_count += bucket_starts[chunk][first_digit];
+            }
+            if (first_digit_count==word_index) {
+                // every count has the same digit; this pass would not move anything
+                continue;
+            }
+            int start = 0;
+            for (int b=0;b<RADIX_BUCKETS;b++) {
+                for (int chunk=0;chunk<chunk_count;chunk++) {
+                    int bucket_size = bucket_starts[chunk][b];
+                    bucket_starts[chunk][b] = start;
+                    start += bucket_size;
+                }
+            }
+            // stable scatter: equal digits keep the order of the previous pass
+            for_each_chunk(chunk_count, chunk -> {
+                int[] next = bucket_starts[chunk];
+                for (int i=chunk*chunk_size, end=Math.min(word_index, i+chunk_size);i<end;i++) {
+                    int index = from[i];
+                    to[next[descending_digit(counts[index], digit_shift)]++] = index;
+                }
+            });
+            sorted = to;
+            scratch = from;
+        }
+        count_descending_indices = sorted;
+
+        // equal counts are now in index order; that is word order unless the words were added out of order
+        if (!words_in_order) {
+            sort_equal_counts_by_word(scratch);
+        }
+    }
 
-        // initialize the index array with ascending index numbers
-        IntStream.range(0,word_index)
-                .forEach(i -> count_descending_indices[i]=i);
+    private static void for_each_chunk(int chunk_count, IntConsumer action) {
+        if (chunk_count==1) {
+            action.accept(0);
+        } else {
+            IntStream.range(0, chunk_count).parallel().forEach(action);
+        }
+    }
 
-        // sort the index array in descending word count order.
-        Arrays.sort(
-                count_descending_indices,
-                (index_A, index_B) -> counts[index_B]-counts[index_A]
-                );
+    private boolean is_in_word_order() {
+        for (int i=1;i<word_index;i++) {
+            if (words[i-1].compareTo(words[i])>0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns one byte of ~count, so that ascending digits sort by descending unsigned count
+     */
+    private static int descending_digit(int count, int shift) {
+        return (~count>>>shift) & (RADIX_BUCKETS-1);
+    }
+
+    /**
+     * Pack a word count and a word index into one long that sorts in ascending order by
+     * descending unsigned word count, then by ascending index.
+     * @param count word count; treated as an unsigned integer
+     * @param index word index; must not be negative
+     * @return sort key; (int)key is the index
+     */
+    public static long pack_count_descending(int count, int index) {
+        // flipping the sign bit makes the signed order of the high int match the unsigned order of ~count
+        return ((long)(~count ^ Integer.MIN_VALUE)<<32) | index;
+    }
+
+    /**
+     * Sort each run of equal counts in count_descending_indices by word.
+     * @param scratch at least word_index ints; used as the merge sort buffer
+     */
+    private void sort_equal_counts_by_word(int[] scratch) {
+        int run_start = 0;
+        while (run_start<word_index) {
+            int run_count = counts[count_descending_indices[run_start]];
+            int run_end = run_start+1;
+            while (run_end<word_index && counts[count_descending_indices[run_end]]==run_count) {
+                run_end++;
+            }
+            if (run_end-run_start>1) {
+                merge_sort_by_word(run_start, run_end, scratch);
+            }
+            run_start = run_end;
+        }
+    }
+
+    /**
+     * Stable bottom up merge sort of count_descending_indices[start..end) by word
+     */
+    private void merge_sort_by_word(int start, int end, int[] scratch) {
+        int[] indices = count_descending_indices;
+        for (int width=1;width<end-start;width*=2) {
+            for (int left=start;left<end-width;left+=2*width) {
+                int middle = left+width;
+                int right_end = Math.min(left+2*width, end);
+                if (words[indices[middle-1]].compareTo(words[indices[middle]])<=0) {
+                    // already in order
+                    continue;
+                }
+                for (int i=left;i<right_end;i++) {
+                    scratch[i] = indices[i];
+                }
+                int l = left, r = middle;
+                for (int i=left;i<right_end;i++) {
+                    if (r>=right_end || (l<middle && words[scratch[l]].compareTo(words[scratch[r]])<=0)) {
+                        indices[i] = scratch[l++];
+                    } else {
+                        indices[i] = scratch[r++];
+                    }
+                }
+            }
+        }
     }
 
     /**
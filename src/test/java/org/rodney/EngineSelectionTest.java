@@ -0,0 +1,161 @@
+package org.rodney;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EngineSelectionTest {
+
+    private static Path writeTempFile(String content) throws Exception {
+        Path path = Files.createTempFile("profile", ".txt");
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    @Test
+    public void smallEnglishTest() throws Exception {
+        Path path = writeTempFile("the quick brown fox jumps over the lazy dog\n".repeat(100));
+        try {
+            InputProfile profile = InputProfile.sample(path);
+            assertEquals(Files.size(path), profile.getFileSize());
+            assertEquals(Files.size(path), profile.getSampledBytes());
+            assertEquals(900, profile.getSampledTokens());
+            assertEquals(8, profile.getSampledDistinctWords());
+            assertEquals(35.0/9, profile.getAverageWordLength(), 1e-9);
+            assertEquals(0.0, profile.getNonAsciiRatio());
+            assertFalse(profile.isTrieSaturated());
+            // the vocabulary stops growing almost immediately
+            assertTrue(profile.getHeapsBeta()<0.5, profile.toString());
+
+            EngineSelection selection = EngineSelection.select(profile, 8);
+            assertEquals(EngineSelection.Engine.TRIE, selection.getEngine());
+            assertEquals(EngineSelection.MIN_TRIE_CAPACITY, selection.getTrieCapacity());
+            assertEquals(1, selection.getParallelism());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void nonAsciiTest() throws Exception {
+        Path path = writeTempFile("gr\u00f6\u00dfe stra\u00dfe \u00fcber \u00f6l\n".repeat(50));
+        try {
+            InputProfile profile = InputProfile.sample(path);
+            assertTrue(profile.getNonAsciiRatio()>0.1);
+            EngineSelection selection = EngineSelection.select(profile, 8);
+            assertEquals(EngineSelection.Engine.REGEX, selection.getEngine());
+            // small file: no parallel stream
+            assertEquals(1, selection.getParallelism());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void latin1Test() throws Exception {
+        Path path = Files.createTempFile("profile", ".txt");
+        String content = "gr\u00f6\u00dfe stra\u00dfe \u00fcber \u00f6l\n".repeat(50);
+        Files.write(path, content.getBytes(StandardCharsets.ISO_8859_1));
+        try {
+            InputProfile profile = InputProfile.sample(path);
+            assertTrue(profile.getNonAsciiRatio()>0.1);
+            assertFalse(profile.isValidUtf8(), profile.toString());
+            // REGEX would fail to decode the file
+            EngineSelection selection = EngineSelection.select(profile, 8);
+            assertEquals(EngineSelection.Engine.TRIE, selection.getEngine());
+            assertTrue(selection.getReason().contains("UTF-8"), selection.getReason());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void nonAsciiHeapTest() throws Exception {
+        Path path = writeTempFile("gr\u00f6\u00dfe stra\u00dfe \u00fcber \u00f6l\n".repeat(50));
+        try {
+            InputProfile profile = InputProfile.sample(path);
+            assertTrue(profile.isValidUtf8());
+            long file_size = Files.size(path);
+            assertEquals(
+                    EngineSelection.Engine.REGEX,
+                    EngineSelection.select(profile, 8, file_size*EngineSelection.REGEX_HEAP_BYTES_PER_INPUT_BYTE).getEngine()
+            );
+            // the file does not fit in the heap as a String
+            EngineSelection selection = EngineSelection.select(profile, 8, file_size);
+            assertEquals(EngineSelection.Engine.TRIE, selection.getEngine());
+            assertTrue(selection.getReason().contains("heap"), selection.getReason());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void hugeVocabularyTest() throws Exception {
+        // random ids: every token is a new word
+        Random random = new Random(7);
+        StringBuilder content = new StringBuilder();
+        for (int i=0;i<40000;i++) {
+            for (int j=0;j<12;j++) {
+                content.append((char)('a'+random.nextInt(26)));
+            }
+            content.append(' ');
+        }
+        Path path = writeTempFile(content.toString());
+        try {
+            // strided sampling of a part of the file
+            InputProfile profile = InputProfile.sample(path, 64<<10, 4);
+            assertTrue(profile.getSampledBytes()<Files.size(path));
+            assertTrue(profile.getHeapsBeta()>0.9, profile.toString());
+            assertTrue(profile.getEstimatedTokens()>30000, profile.toString());
+
+            EngineSelection selection = EngineSelection.select(profile, 8);
+            assertEquals(EngineSelection.Engine.SPILLING_TRIE, selection.getEngine());
+            assertTrue(selection.getMemoryBudgetBytes()>0);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void saturatedZipfTest() throws Exception {
+        // Zipf distributed tokens over a fixed vocabulary of 3000 words
+        Random random = new Random(3);
+        int vocabulary_size = 3000;
+        String[] vocabulary = new String[vocabulary_size];
+        double[] cumulative = new double[vocabulary_size];
+        double total = 0;
+        for (int i=0;i<vocabulary_size;i++) {
+            StringBuilder word = new StringBuilder();
+            for (int j=0, length=3+random.nextInt(6);j<length;j++) {
+                word.append((char)('a'+random.nextInt(26)));
+            }
+            vocabulary[i] = word.toString();
+            total += 1.0/(i+1);
+            cumulative[i] = total;
+        }
+        StringBuilder content = new StringBuilder();
+        for (int i=0;i<600000;i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble()*total);
+            content.append(vocabulary[rank<0 ? -rank-1 : rank]).append(i%12==11 ? '\n' : ' ');
+        }
+        Path path = writeTempFile(content.toString());
+        try {
+            // the sample is an eighth of the file
+            InputProfile profile = InputProfile.sample(path, 512<<10, 8);
+            assertTrue(profile.getSampledBytes()<Files.size(path));
+            assertTrue(profile.isVocabularySaturated(), profile.toString());
+            assertTrue(profile.getEstimatedDistinctWords()<=vocabulary_size, profile.toString());
+
+            EngineSelection selection = EngineSelection.select(profile, 8);
+            assertEquals(EngineSelection.Engine.TRIE, selection.getEngine(), profile.toString());
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.rodney.trie;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocumentTermCounterTest {
+
+    // copies each vector, because the counter reuses its arrays
+    private static class CollectingConsumer implements DocumentTermCounter.DocumentVectorConsumer {
+        List<int[]> term_ids = new ArrayList<>();
+        List<int[]> term_counts = new ArrayList<>();
+
+        @Override
+        public void accept(int document_id, int[] ids, int[] counts, int length) {
+            assertEquals(term_ids.size(), document_id);
+            term_ids.add(Arrays.copyOf(ids, length));
+            term_counts.add(Arrays.copyOf(counts, length));
+        }
+    }
+
+    private static int count(DocumentTermCounter counter, String document, CollectingConsumer consumer) {
+        byte[] bytes = document.getBytes(StandardCharsets.US_ASCII);
+        return counter.count_document(bytes, 0, bytes.length, consumer);
+    }
+
+    @Test
+    public void ctorTest() {
+        TermDictionary dictionary = new TermDictionary(100);
+        DocumentTermCounter counter = new DocumentTermCounter(dictionary);
+        assertSame(dictionary, counter.getDictionary());
+        assertEquals(0, counter.touched_count);
+    }
+
+    @Test
+    public void count_documentTest() {
+        TermDictionary dictionary = new TermDictionary(200);
+        DocumentTermCounter counter = new DocumentTermCounter(dictionary);
+        CollectingConsumer consumer = new CollectingConsumer();
+
+        assertEquals(0, count(counter, "the zoo the wall", consumer));
+        assertEquals(1, count(counter, "Wall queen\nwall", consumer));
+        assertEquals(2, count(counter, "  ", consumer));
+
+        // term ids: the=0, zoo=1, wall=2, queen=3
+        assertArrayEquals(new int[]{0, 1, 2}, consumer.term_ids.get(0));
+        assertArrayEquals(new int[]{2, 1, 1}, consumer.term_counts.get(0));
+        assertArrayEquals(new int[]{2, 3}, consumer.term_ids.get(1));
+        assertArrayEquals(new int[]{2, 1}, consumer.term_counts.get(1));
+        assertEquals(0, consumer.term_ids.get(2).length);
+
+        assertEquals("queen", dictionary.get_term(3));
+        assertEquals(3, dictionary.get_corpus_count(2));
+        assertEquals(2, dictionary.get_document_frequency(2));
+        assertEquals(1, dictionary.get_document_frequency(0));
+        assertEquals(3, dictionary.getDocumentCount());
+
+        // touched scratch slots are reset between documents
+        for (int scratch_count : counter.scratch_counts) {
+            assertEquals(0, scratch_count);
+        }
+    }
+
+    @Test
+    public void split_documentTest() {
+        DocumentTermCounter counter = new DocumentTermCounter(new TermDictionary(200));
+        CollectingConsumer consumer = new CollectingConsumer();
+        byte[] bytes = "zoology zoo".getBytes(StandardCharsets.US_ASCII);
+        // a word may continue in the next buffer
+        counter.parse(bytes, 0, 3);
+        counter.parse(bytes, 3, bytes.length-3);
+        counter.end_document(consumer);
+        assertArrayEquals(new int[]{0, 1}, consumer.term_ids.get(0));
+        assertEquals("zoology", counter.getDictionary().get_term(0));
+        assertEquals("zoo", counter.getDictionary().get_term(1));
+    }
+
+    @Test
+    public void dictionary_fullTest() {
+        // root + "the" + "zoo" = 7 trie nodes
+        TermDictionary dictionary = new TermDictionary(8);
+        DocumentTermCounter counter = new DocumentTermCounter(dictionary);
+        CollectingConsumer consumer = new CollectingConsumer();
+        assertEquals(0, count(counter, "the zoo", consumer));
+        assertEquals(1, dictionary.getFreeNodeCount());
+
+        try {
+            count(counter, "the the wall", consumer);
+            fail();
+        } catch (IllegalStateException ex) {
+        }
+        // the partial document was discarded; nothing of it leaks into the dictionary or the next document
+        assertEquals(1, dictionary.getDocumentCount());
+        assertEquals(1, dictionary.get_corpus_count(0));
+        assertEquals(0, counter.touched_count);
+        for (int scratch_count : counter.scratch_counts) {
+            assertEquals(0, scratch_count);
+        }
+
+        // known words still fit
+        assertEquals(1, count(counter, "zoo zoo", consumer));
+        assertArrayEquals(new int[]{1}, consumer.term_ids.get(1));
+        assertArrayEquals(new int[]{2}, consumer.term_counts.get(1));
+        assertEquals(3, dictionary.get_corpus_count(1));
+        assertEquals(2, dictionary.getDocumentCount());
+    }
+}
@@ -0,0 +1,44 @@
+package org.rodney.trie;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.rodney.trie.TrieBuffer.*;
+import static org.rodney.trie.TrieTestData.*;
+
+public class LinkedTrieBufferTest {
+    @Test
+    public void ctorTest() {
+        LinkedTrieBuffer trie = new LinkedTrieBuffer(10);
+        assertEquals(10, trie.parent_index.length);
+        assertEquals(10, trie.node_letter.length);
+        assertEquals(0, trie.get_word_length((char)0));
+        assertEquals("", trie.get_word((char)0));
+    }
+
+    @Test
+    public void get_wordTest() {
+        LinkedTrieBuffer trie = new LinkedTrieBuffer(200);
+        for (String word : seed_list) {
+            char trie_index = trie.insert_word(word);
+            String expected = word.replace("'","").toLowerCase();
+            assertEquals(expected, trie.get_word(trie_index));
+            assertEquals(expected.length(), trie.get_word_length(trie_index));
+        }
+        // inserting a word again does not change its parent links
+        char trie_index = trie.insert_word("THEIR");
+        assertEquals("their", trie.get_word(trie_index));
+        assertEquals(2, trie.get_trie_node_count(trie_index));
+    }
+
+    @Test
+    public void copy_wordTest() {
+        LinkedTrieBuffer trie = new LinkedTrieBuffer(200);
+        char trie_index = trie.insert_word("wallace");
+        byte[] dest = new byte[10];
+        assertEquals(7, trie.copy_word(trie_index, dest, 2));
+        assertEquals("wallace", new String(dest, 2, 7, StandardCharsets.US_ASCII));
+    }
+}
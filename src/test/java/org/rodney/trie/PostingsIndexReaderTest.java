@@ -0,0 +1,158 @@
+package org.rodney.trie;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PostingsIndexReaderTest {
+
+    private static final String TEXT = "the quick fox and the lazy dog and the quick cat";
+
+    private static Path writeIndex(String text) throws IOException {
+        PostingsIndexer indexer = new PostingsIndexer(1000);
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        indexer.parse(bytes, 0, bytes.length);
+        Path path = Files.createTempFile("postings", ".idx");
+        indexer.write(path);
+        return path;
+    }
+
+    @Test
+    public void get_positionsTest() throws Exception {
+        Path path = writeIndex(TEXT);
+        try (PostingsIndexReader reader = new PostingsIndexReader(path)) {
+            assertArrayEquals(new long[]{0, 18, 35}, reader.get_positions("the"));
+            assertArrayEquals(new long[]{4, 39}, reader.get_positions("Quick"));
+            assertArrayEquals(new long[]{45}, reader.get_positions("cat"));
+            assertEquals(3, reader.get_occurrence_count("the"));
+            assertEquals(0, reader.get_positions("missing").length);
+            assertEquals(0, reader.get_positions("th").length);
+            assertEquals(0, reader.get_occurrence_count("theory"));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void find_cooccurrencesTest() throws Exception {
+        Path path = writeIndex(TEXT);
+        try (PostingsIndexReader reader = new PostingsIndexReader(path)) {
+            // phrase "the quick": "quick" starts 4 bytes after "the"
+            assertArrayEquals(new long[]{0, 35}, reader.find_cooccurrences("the", "quick", 4));
+            assertArrayEquals(new long[]{18}, reader.find_cooccurrences("the", "lazy", 4));
+            assertArrayEquals(new long[]{14, 31}, reader.find_cooccurrences("and", "the", 4));
+            // a wider window
+            assertArrayEquals(new long[]{0, 18}, reader.find_cooccurrences("the", "and", 15));
+            assertEquals(0, reader.find_cooccurrences("cat", "the", 100).length);
+            assertEquals(0, reader.find_cooccurrences("missing", "the", 100).length);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void document_cooccurrencesTest() throws Exception {
+        // document id positions: alpha and beta share document 1
+        PostingsIndexer indexer = new PostingsIndexer(200);
+        indexer.add_occurrence("alpha", 1);
+        indexer.add_occurrence("beta", 1);
+        indexer.add_occurrence("alpha", 2);
+        indexer.add_occurrence("beta", 3);
+        indexer.add_occurrence("alpha", 5);
+        indexer.add_occurrence("beta", 8);
+
+        Path path = Files.createTempFile("postings", ".idx");
+        try {
+            indexer.write(path);
+            try (PostingsIndexReader reader = new PostingsIndexReader(path)) {
+                // same document
+                assertArrayEquals(new long[]{1}, reader.find_cooccurrences("alpha", "beta", 0, 0));
+                // same or next document
+                assertArrayEquals(new long[]{1, 2}, reader.find_cooccurrences("alpha", "beta", 0, 1));
+                // a later document only
+                assertArrayEquals(new long[]{2}, reader.find_cooccurrences("alpha", "beta", 1));
+                assertArrayEquals(new long[]{5}, reader.find_cooccurrences("alpha", "beta", 3, 3));
+                // a word occurs in its own documents
+                assertArrayEquals(new long[]{1, 2, 5}, reader.find_cooccurrences("alpha", "alpha", 0, 0));
+                try {
+                    reader.find_cooccurrences("alpha", "beta", 2, 1);
+                    fail();
+                } catch (IllegalArgumentException ex) {
+                }
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void rejected_positionTest() throws Exception {
+        PostingsIndexer indexer = new PostingsIndexer(200);
+        indexer.add_occurrence("zoo", 10);
+        try {
+            indexer.add_occurrence("zoo", 5);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        indexer.add_occurrence("zebra", 7);
+
+        Path path = Files.createTempFile("postings", ".idx");
+        try {
+            indexer.write(path);
+            try (PostingsIndexReader reader = new PostingsIndexReader(path)) {
+                assertArrayEquals(new long[]{10}, reader.get_positions("zoo"));
+                assertArrayEquals(new long[]{7}, reader.get_positions("zebra"));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void largeIndexTest() throws Exception {
+        Random random = new Random(3);
+        List<String> words = List.of("wall", "wallace", "zoo", "zoology", "queen", "their", "there");
+        StringBuilder text = new StringBuilder();
+        List<Long> zoo_positions = new ArrayList<>();
+        for (int i=0;i<20000;i++) {
+            String word = words.get(random.nextInt(words.size()));
+            if (word.equals("zoo")) {
+                zoo_positions.add((long)text.length());
+            }
+            text.append(word).append(i%10==0 ? "\n" : " ");
+        }
+        Path path = writeIndex(text.toString());
+        try (PostingsIndexReader reader = new PostingsIndexReader(path)) {
+            long[] positions = reader.get_positions("zoo");
+            assertEquals(zoo_positions.size(), positions.length);
+            for (int i=0;i<positions.length;i++) {
+                assertEquals(zoo_positions.get(i), positions[i]);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void bad_fileTest() throws Exception {
+        Path path = Files.createTempFile("postings", ".idx");
+        try {
+            Files.write(path, "not an index file at all".getBytes(StandardCharsets.US_ASCII));
+            try {
+                new PostingsIndexReader(path);
+                fail();
+            } catch (IOException ex) {
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
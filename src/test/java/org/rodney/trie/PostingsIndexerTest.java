@@ -0,0 +1,76 @@
+package org.rodney.trie;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PostingsIndexerTest {
+
+    @Test
+    public void ctorTest() {
+        PostingsIndexer indexer = new PostingsIndexer(100);
+        assertEquals(100, indexer.getTrieBuffer().getCapacity());
+        assertEquals(100, indexer.node_first_block.length);
+        assertEquals(PostingsIndexer.BLOCK_SIZE, indexer.next_block);
+    }
+
+    @Test
+    public void parseTest() {
+        PostingsIndexer indexer = new PostingsIndexer(200);
+        byte[] text = "the zoo  'the wall\nthe".getBytes(StandardCharsets.US_ASCII);
+        indexer.parse(text, 0, 10);
+        indexer.parse(text, 10, text.length-10);
+        indexer.end_word();
+
+        TrieBuffer trie = indexer.getTrieBuffer();
+        char the = trie.find_word("the");
+        assertArrayEquals(new long[]{0, 9, 19}, indexer.get_positions(the));
+        assertEquals(3, trie.get_trie_node_count(the));
+        assertEquals(3, trie.getWordCount());
+
+        char wall = indexer.add_occurrence("wall", 100);
+        assertArrayEquals(new long[]{14, 100}, indexer.get_positions(wall));
+    }
+
+    @Test
+    public void block_chainTest() {
+        PostingsIndexer indexer = new PostingsIndexer(200);
+        // enough large deltas to fill many blocks
+        char trie_index = 0;
+        long[] expected = new long[1000];
+        long position = 0;
+        for (int i=0;i<expected.length;i++) {
+            position += 1+(i*7919L)%100000;
+            expected[i] = position;
+            trie_index = indexer.add_occurrence("zoology", position);
+        }
+        // a second word interleaves its blocks with the first word
+        char zoo = indexer.add_occurrence("zoo", 10);
+        assertArrayEquals(expected, indexer.get_positions(trie_index));
+        long postings_length = indexer.postings_length(trie_index);
+        assertTrue(postings_length>PostingsIndexer.BLOCK_DATA_SIZE);
+
+        try {
+            indexer.add_occurrence("zoology", 1);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        // a rejected position is neither counted nor written
+        TrieBuffer trie = indexer.getTrieBuffer();
+        assertEquals(expected.length, trie.get_trie_node_count(trie_index));
+        assertArrayEquals(expected, indexer.get_positions(trie_index));
+        assertEquals(postings_length, indexer.postings_length(trie_index));
+
+        try {
+            indexer.add_occurrence("zoo", 5);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        char zebra = indexer.add_occurrence("zebra", 7);
+        assertEquals(1, trie.get_trie_node_count(zoo));
+        assertArrayEquals(new long[]{10}, indexer.get_positions(zoo));
+        assertArrayEquals(new long[]{7}, indexer.get_positions(zebra));
+    }
+}
@@ -0,0 +1,137 @@
+package org.rodney.trie;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpillingWordCounterTest {
+
+    // 200 trie nodes, and merges of 2 runs at a time
+    private static final long SMALL_BUDGET = SpillingWordCounter.memory_budget_for(200, 2);
+
+    private static String expectedTsv(Map<String,Integer> expected) {
+        return expected.entrySet().stream()
+                .map(entry -> entry.getValue()+"\t"+entry.getKey()+"\n")
+                .collect(Collectors.joining());
+    }
+
+    private static void deleteAll(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void trie_capacity_for_budgetTest() {
+        assertEquals(200, SpillingWordCounter.trie_capacity_for_budget(SMALL_BUDGET));
+        assertEquals(2, SpillingWordCounter.merge_fan_in_for_budget(SMALL_BUDGET));
+        assertEquals(1<<16, SpillingWordCounter.run_buffer_size_for_budget(SMALL_BUDGET));
+
+        // a larger budget first fills the TrieBuffer, then raises the merge fan-in ...
+        int max_capacity = SpillingWordCounter.MAX_TRIE_CAPACITY;
+        long budget = SpillingWordCounter.memory_budget_for(max_capacity, 100);
+        assertEquals(max_capacity, SpillingWordCounter.trie_capacity_for_budget(budget));
+        assertEquals(100, SpillingWordCounter.merge_fan_in_for_budget(budget));
+        assertEquals(1<<16, SpillingWordCounter.run_buffer_size_for_budget(budget));
+
+        // ... and then the merge buffer size
+        long max_budget = SpillingWordCounter.MAX_MEMORY_BUDGET;
+        assertEquals(max_capacity, SpillingWordCounter.trie_capacity_for_budget(max_budget));
+        assertEquals(1024, SpillingWordCounter.merge_fan_in_for_budget(max_budget));
+        assertEquals(1<<24, SpillingWordCounter.run_buffer_size_for_budget(max_budget));
+
+        // budgets that can not be used are rejected
+        for (long unusable : new long[]{1, SpillingWordCounter.MIN_MEMORY_BUDGET-1, max_budget+1, Long.MAX_VALUE}) {
+            try {
+                SpillingWordCounter.trie_capacity_for_budget(unusable);
+                fail("budget="+unusable);
+            } catch (IllegalArgumentException ex) {
+            }
+        }
+    }
+
+    @Test
+    public void inMemoryTest() throws Exception {
+        Path directory = Files.createTempDirectory("spill");
+        Path output = directory.resolve("out.tsv");
+        try {
+            SpillingWordCounter counter = new SpillingWordCounter(SMALL_BUDGET, directory);
+            byte[] text = "the zoo The wall zoo the".getBytes(StandardCharsets.US_ASCII);
+            counter.parse(text, 0, text.length);
+            assertEquals(0, counter.getRunCount());
+            assertEquals(3, counter.merge(new TrieResultWriter(TrieResultWriter.Format.TSV), output));
+            assertEquals("3\tthe\n1\twall\n2\tzoo\n", Files.readString(output));
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void spillTest() throws Exception {
+        Path directory = Files.createTempDirectory("spill");
+        Path output = directory.resolve("out.tsv");
+        try {
+            // lots of random words; far more trie nodes than the budget allows
+            Random random = new Random(42);
+            TreeMap<String,Integer> expected = new TreeMap<>();
+            StringBuilder text = new StringBuilder();
+            for (int i=0;i<5000;i++) {
+                int length = 1+random.nextInt(6);
+                StringBuilder word = new StringBuilder();
+                for (int j=0;j<length;j++) {
+                    word.append((char)('a'+random.nextInt(5)));
+                }
+                expected.merge(word.toString(), 1, Integer::sum);
+                text.append(i%7==0 ? word.toString().toUpperCase() : word).append(i%3==0 ? "\n" : " ");
+            }
+
+            SpillingWordCounter counter = new SpillingWordCounter(SMALL_BUDGET, directory);
+            byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+            // feed in odd sized chunks so that words are split across buffers
+            for (int offset=0;offset<bytes.length;offset+=97) {
+                counter.parse(bytes, offset, Math.min(97, bytes.length-offset));
+            }
+            // more runs than one merge can open
+            assertTrue(counter.getRunCount()>counter.getMergeFanIn());
+
+            long records = counter.merge(new TrieResultWriter(TrieResultWriter.Format.TSV), output);
+            assertEquals(expected.size(), records);
+            assertEquals(expectedTsv(expected), Files.readString(output));
+            assertEquals(0, counter.getRunCount());
+            // only the output file is left behind
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(1, files.count());
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void word_too_longTest() throws Exception {
+        Path directory = Files.createTempDirectory("spill");
+        try {
+            SpillingWordCounter counter = new SpillingWordCounter(SMALL_BUDGET, directory);
+            byte[] text = "a".repeat(300).getBytes(StandardCharsets.US_ASCII);
+            try {
+                counter.parse(text, 0, text.length);
+                fail();
+            } catch (IllegalStateException ex) {
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+}
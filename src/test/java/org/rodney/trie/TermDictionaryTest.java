@@ -0,0 +1,59 @@
+package org.rodney.trie;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.rodney.trie.TrieTestData.*;
+
+public class TermDictionaryTest {
+    @Test
+    public void ctorTest() {
+        TermDictionary dictionary = new TermDictionary(10);
+        assertEquals(0, dictionary.getTermCount());
+        assertEquals(0, dictionary.getDocumentCount());
+        assertEquals(10, dictionary.node_term_id.length);
+    }
+
+    @Test
+    public void get_term_idTest() {
+        TermDictionary dictionary = new TermDictionary(200);
+        for (int i=0;i<seed_list.size();i++) {
+            assertEquals(i, dictionary.get_term_id(seed_list.get(i)));
+        }
+        assertEquals(seed_list.size(), dictionary.getTermCount());
+        // same word, same term id
+        assertEquals(0, dictionary.get_term_id("THE"));
+        assertEquals(seed_list.size(), dictionary.getTermCount());
+        assertEquals(-1, dictionary.get_term_id("123"));
+
+        for (int i=0;i<seed_list.size();i++) {
+            assertEquals(seed_list.get(i).replace("'","").toLowerCase(), dictionary.get_term(i));
+        }
+        // looking up a term id does not count the word
+        assertEquals(0, dictionary.get_corpus_count(0));
+        assertEquals(0, dictionary.getWordCount());
+    }
+
+    @Test
+    public void manyTermsTest() {
+        TermDictionary dictionary = new TermDictionary(5000);
+        int term_id = 0;
+        for (char a='a';a<='z';a++) {
+            for (char b='a';b<='z';b++) {
+                assertEquals(term_id++, dictionary.get_term_id(""+a+b));
+            }
+        }
+        assertEquals("zz", dictionary.get_term(term_id-1));
+    }
+
+    @Test
+    public void clearTest() {
+        TermDictionary dictionary = new TermDictionary(200);
+        dictionary.get_term_id("wall");
+        dictionary.get_term_id("zoo");
+        dictionary.clear();
+        assertEquals(0, dictionary.getTermCount());
+        assertEquals(0, dictionary.get_term_id("zoo"));
+        assertEquals("zoo", dictionary.get_term(0));
+    }
+}
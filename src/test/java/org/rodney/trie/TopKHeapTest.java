@@ -0,0 +1,37 @@
+package org.rodney.trie;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TopKHeapTest {
+    @Test
+    public void offerTest() {
+        TopKHeap heap = new TopKHeap(3);
+        long[] payloads = new long[3];
+        long[] keys = {5, 1, 9, 3, 7, 2, 8};
+        for (long key : keys) {
+            int slot = heap.offer(key);
+            if (slot>=0) {
+                payloads[slot] = key;
+            }
+        }
+        assertEquals(3, heap.size());
+        // 1 can not displace anything once the heap is full of larger keys
+        assertEquals(-1, heap.offer(1));
+
+        int[] order = new int[3];
+        assertEquals(3, heap.drain_descending(order));
+        assertEquals(9, payloads[order[0]]);
+        assertEquals(8, payloads[order[1]]);
+        assertEquals(7, payloads[order[2]]);
+        assertEquals(0, heap.size());
+    }
+
+    @Test
+    public void emptyHeapTest() {
+        TopKHeap heap = new TopKHeap(0);
+        assertEquals(-1, heap.offer(42));
+        assertEquals(0, heap.drain_descending(new int[0]));
+    }
+}
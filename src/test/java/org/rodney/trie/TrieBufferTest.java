@@ -128,6 +128,28 @@ public class TrieBufferTest {
         assertEquals(1, trie.trie_buffer[compute_trie_node_count_hi_offset(trie_index)]);
     }
 
+    @Test
+    public void clearTest() {
+        TrieBuffer trie = new TrieBuffer(4);
+        trie.insert_word("the");
+        assertEquals(1, trie.word_count);
+        try {
+            trie.insert_word("a");
+            fail();
+        } catch (ArrayIndexOutOfBoundsException ex) {
+        }
+
+        trie.clear();
+        assertEquals(0, trie.word_count);
+        assertEquals(1, trie.next_trie_node_allocation_index);
+        for (int i=0;i<trie.trie_buffer.length;i++) {
+            assertEquals(0, trie.trie_buffer[i]);
+        }
+        char trie_index = trie.insert_word("a");
+        assertEquals(1, trie_index);
+        assertEquals(1, trie.get_trie_node_count(trie_index));
+    }
+
     @Test
     public void is_spaceTest() {
         for (int i=0;i<255;i++) {
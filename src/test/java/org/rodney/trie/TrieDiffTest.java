@@ -0,0 +1,82 @@
+package org.rodney.trie;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrieDiffTest {
+
+    private static void insert(TrieBuffer trie, String word, int count) {
+        for (int i=0;i<count;i++) {
+            trie.insert_word(word);
+        }
+    }
+
+    @Test
+    public void emptyDiffTest() {
+        TrieDiff diff = new TrieDiff(new TrieBuffer(10), new TrieBuffer(10), 5).diff();
+        assertEquals(0, diff.getAddedWords().getWordCount());
+        assertEquals(0, diff.getRemovedWords().getWordCount());
+        assertEquals(0, diff.getAbsoluteChanges().getWordCount());
+        assertEquals(0, diff.getRelativeChanges().getWordCount());
+    }
+
+    @Test
+    public void diffTest() {
+        TrieBuffer before = new TrieBuffer(200);
+        insert(before, "the", 100);
+        insert(before, "their", 10);
+        insert(before, "zoo", 2);
+        insert(before, "wall", 7);
+        insert(before, "queen", 50);
+
+        TrieBuffer after = new TrieBuffer(200);
+        insert(after, "the", 130);     // +30, +30%
+        insert(after, "there", 4);     // added; prefix of nothing in before
+        insert(after, "th", 1);        // added; inner node of both tries
+        insert(after, "zoo", 8);       // +6, +300%
+        insert(after, "wall", 7);      // unchanged
+        insert(after, "queen", 40);    // -10, -20%
+
+        TrieDiff diff = new TrieDiff(before, after, 2).diff();
+
+        WordsAndCounts added = diff.getAddedWords();
+        assertEquals(2, added.getWordCount());
+        assertEquals("there", added.get_sorted_word(0));
+        assertEquals(4, added.get_sorted_count(0));
+        assertEquals("th", added.get_sorted_word(1));
+
+        WordsAndCounts removed = diff.getRemovedWords();
+        assertEquals(1, removed.getWordCount());
+        assertEquals("their", removed.get_sorted_word(0));
+        assertEquals(10, removed.get_sorted_count(0));
+
+        TrieDiff.Changes absolute = diff.getAbsoluteChanges();
+        assertEquals(2, absolute.getWordCount());
+        assertEquals("the", absolute.get_word(0));
+        assertEquals(100, absolute.get_before_count(0));
+        assertEquals(130, absolute.get_after_count(0));
+        assertEquals(30, absolute.get_delta(0));
+        assertEquals("queen", absolute.get_word(1));
+        assertEquals(-10, absolute.get_delta(1));
+
+        TrieDiff.Changes relative = diff.getRelativeChanges();
+        assertEquals(2, relative.getWordCount());
+        assertEquals("zoo", relative.get_word(0));
+        assertEquals(6, relative.get_delta(0));
+        assertEquals("the", relative.get_word(1));
+    }
+
+    @Test
+    public void swappedDiffTest() {
+        TrieBuffer before = new TrieBuffer(200);
+        insert(before, "wallace", 3);
+        TrieBuffer after = new TrieBuffer(200);
+        insert(after, "wall", 5);
+
+        TrieDiff diff = new TrieDiff(before, after, 10).diff();
+        assertEquals("wall", diff.getAddedWords().get_sorted_word(0));
+        assertEquals("wallace", diff.getRemovedWords().get_sorted_word(0));
+        assertEquals(0, diff.getAbsoluteChanges().getWordCount());
+    }
+}
@@ -0,0 +1,124 @@
+package org.rodney.trie;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.rodney.trie.TrieResultWriter.*;
+
+public class TrieResultWriterTest {
+
+    private static TrieBuffer buildTrie() {
+        TrieBuffer trie = new TrieBuffer(100);
+        for (int i=0;i<3;i++) trie.insert_word("the");
+        for (int i=0;i<2;i++) trie.insert_word("zoo");
+        trie.insert_word("there");
+        trie.insert_word("a");
+        for (int i=0;i<2;i++) trie.insert_word("wall");
+        return trie;
+    }
+
+    @Test
+    public void ctorTest() {
+        TrieResultWriter writer = new TrieResultWriter(Format.TSV);
+        assertEquals(Format.TSV, writer.getFormat());
+        assertEquals(DEFAULT_BUFFER_SIZE, writer.out_bytes.length);
+
+        try {
+            new TrieResultWriter(Format.TSV, MIN_BUFFER_SIZE-1);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void put_unsigned_decimalTest() {
+        byte[] dest = new byte[20];
+        int end = put_unsigned_decimal(dest, 1, 0);
+        assertEquals("0", new String(dest, 1, end-1, StandardCharsets.US_ASCII));
+        end = put_unsigned_decimal(dest, 0, 1234567);
+        assertEquals("1234567", new String(dest, 0, end, StandardCharsets.US_ASCII));
+        end = put_unsigned_decimal(dest, 0, -1);
+        assertEquals("4294967295", new String(dest, 0, end, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void tsvLexicographicTest() throws Exception {
+        Path path = Files.createTempFile("words", ".tsv");
+        try {
+            // use a tiny buffer to force several flushes
+            TrieResultWriter writer = new TrieResultWriter(Format.TSV, MIN_BUFFER_SIZE);
+            long records = writer.write(buildTrie(), Order.LEXICOGRAPHIC, path);
+            assertEquals(5, records);
+            assertEquals(
+                    "1\ta\n3\tthe\n1\tthere\n2\twall\n2\tzoo\n",
+                    Files.readString(path)
+            );
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void csvCountDescendingTest() throws Exception {
+        Path path = Files.createTempFile("words", ".csv");
+        try {
+            TrieResultWriter writer = new TrieResultWriter(Format.CSV);
+            TrieBuffer trie = buildTrie();
+            assertEquals(5, writer.write(trie, Order.COUNT_DESCENDING, path));
+            // ties are broken in lexicographic order
+            assertEquals(
+                    "3,the\n2,wall\n2,zoo\n1,a\n1,there\n",
+                    Files.readString(path)
+            );
+
+            // writer can be reused
+            trie.insert_word("zoo");
+            assertEquals(5, writer.write(trie, Order.COUNT_DESCENDING, path));
+            assertEquals(
+                    "3,the\n3,zoo\n2,wall\n1,a\n1,there\n",
+                    Files.readString(path)
+            );
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void binaryTest() throws Exception {
+        Path path = Files.createTempFile("words", ".bin");
+        try {
+            TrieResultWriter writer = new TrieResultWriter(Format.BINARY, MIN_BUFFER_SIZE);
+            assertEquals(5, writer.write(buildTrie(), Order.COUNT_DESCENDING, path));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(path)));
+            String[] expected_words = {"the", "wall", "zoo", "a", "there"};
+            int[] expected_counts = {3, 2, 2, 1, 1};
+            for (int i=0;i<expected_words.length;i++) {
+                byte[] word = new byte[in.readInt()];
+                in.readFully(word);
+                assertEquals(expected_words[i], new String(word, StandardCharsets.US_ASCII));
+                assertEquals(expected_counts[i], in.readInt());
+            }
+            assertEquals(0, in.available());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void emptyTrieTest() throws Exception {
+        Path path = Files.createTempFile("words", ".tsv");
+        try {
+            TrieResultWriter writer = new TrieResultWriter(Format.TSV);
+            assertEquals(0, writer.write(new TrieBuffer(1), Order.COUNT_DESCENDING, path));
+            assertEquals(0, Files.size(path));
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.rodney.trie;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.rodney.trie.TrieBuffer.*;
+
+public class WindowedTrieBufferTest {
+    @Test
+    public void ctorTest() {
+        WindowedTrieBuffer trie = new WindowedTrieBuffer(100, 5);
+        assertEquals(5, trie.getWindowEpochs());
+        assertEquals(0, trie.getCurrentEpoch());
+        assertEquals(0, trie.getLiveWordCount());
+
+        try {
+            new WindowedTrieBuffer(100, 0);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void window_countTest() {
+        WindowedTrieBuffer trie = new WindowedTrieBuffer(100, 3);
+        char the = trie.insert_word("the");     // epoch 0
+        trie.advance_epoch();
+        trie.insert_word("the");                // epoch 1
+        trie.insert_word("the");
+        trie.advance_epoch();
+        trie.insert_word("The");                // epoch 2
+        assertEquals(4, trie.get_window_count(the));
+        assertEquals(4, trie.get_window_count("THE"));
+        assertEquals(0, trie.get_window_count("zoo"));
+
+        trie.advance_epoch();                   // epoch 0 leaves the window
+        assertEquals(3, trie.get_window_count(the));
+        trie.advance_epoch();                   // epoch 1 leaves the window
+        assertEquals(1, trie.get_window_count(the));
+
+        // all-time counts keep growing
+        assertEquals(4, trie.get_trie_node_count(the));
+        assertEquals(1, trie.getWordCount());
+    }
+
+    @Test
+    public void slot_reclaimTest() {
+        WindowedTrieBuffer trie = new WindowedTrieBuffer(100, 2);
+        char zoo = trie.insert_word("zoo");
+        assertEquals(1, trie.getLiveWordCount());
+        assertEquals(2, trie.next_slot_allocation_index);
+
+        trie.advance_to_epoch(10);              // skipping many epochs expires the whole ring
+        assertEquals(0, trie.get_window_count(zoo));
+        assertEquals(0, trie.getLiveWordCount());
+        assertEquals(1, trie.free_slot_count);
+        // the trie nodes of "zoo" are reclaimed too, and its all-time count is dropped
+        assertEquals(3, trie.free_node_count);
+        assertEquals(1, trie.getNodeCount());
+        assertEquals(99, trie.getFreeNodeCount());
+        assertEquals(0, trie.getWordCount());
+        assertEquals(CHAR_0, trie.find_word("zoo"));
+
+        // next word reuses the reclaimed slot and trie nodes
+        char wall = trie.insert_word("wall");
+        assertEquals(0, trie.free_slot_count);
+        assertEquals(2, trie.next_slot_allocation_index);
+        assertEquals(0, trie.free_node_count);
+        assertEquals(5, trie.next_trie_node_allocation_index);
+        assertEquals(1, trie.get_window_count(wall));
+        assertEquals("wall", trie.get_word(wall));
+        assertEquals(0, trie.get_window_count("zoo"));
+
+        try {
+            trie.advance_to_epoch(9);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void top_window_countsTest() {
+        WindowedTrieBuffer trie = new WindowedTrieBuffer(1000, 2);
+        for (int i=0;i<10;i++) trie.insert_word("old");
+        trie.advance_epoch();
+        for (int i=0;i<5;i++) trie.insert_word("the");
+        for (int i=0;i<3;i++) trie.insert_word("zoo");
+        for (int i=0;i<3;i++) trie.insert_word("wall");
+        trie.insert_word("queen");
+
+        WordsAndCounts top = trie.top_window_counts(3);
+        assertEquals(3, top.getWordCount());
+        assertEquals("old", top.get_sorted_word(0));
+        assertEquals(10, top.get_sorted_count(0));
+        assertEquals("the", top.get_sorted_word(1));
+        assertEquals(3, top.get_sorted_count(2));
+
+        trie.advance_epoch();                   // "old" leaves the window
+        top = trie.top_window_counts(10);
+        assertEquals(4, top.getWordCount());
+        assertEquals("the", top.get_sorted_word(0));
+        assertEquals(5, top.get_sorted_count(0));
+        assertEquals("queen", top.get_sorted_word(3));
+        assertEquals(4, trie.getLiveWordCount());
+
+        trie.advance_epoch();                   // everything leaves the window
+        assertEquals(0, trie.top_window_counts(10).getWordCount());
+        assertEquals(0, trie.getLiveWordCount());
+        assertEquals(5, trie.free_slot_count);
+    }
+
+    @Test
+    public void many_slotsTest() {
+        WindowedTrieBuffer trie = new WindowedTrieBuffer(20000, 4);
+        // more words than the initial slot capacity
+        for (char a='a';a<='z';a++) {
+            for (char b='a';b<='z';b++) {
+                trie.insert_word(""+a+b);
+            }
+        }
+        assertEquals(26*26, trie.getLiveWordCount());
+        assertEquals(1, trie.get_window_count("zz"));
+        assertEquals(26*26, trie.top_window_counts(1000).getWordCount());
+    }
+
+    @Test
+    public void prefix_reclaimTest() {
+        WindowedTrieBuffer trie = new WindowedTrieBuffer(100, 1);
+        char the = trie.insert_word("the");
+        trie.advance_epoch();
+        char there = trie.insert_word("there");
+        // "the" left the window, but its trie node is still a prefix of "there"
+        assertEquals(0, trie.get_window_count(the));
+        assertEquals(0, trie.free_node_count);
+        assertEquals(1, trie.get_trie_node_count(the));
+
+        trie.advance_epoch();
+        assertEquals(0, trie.get_window_count(there));
+        // now the whole chain is unused
+        assertEquals(5, trie.free_node_count);
+        assertEquals(1, trie.getNodeCount());
+        assertEquals(0, trie.getWordCount());
+    }
+
+    @Test
+    public void long_streamTest() {
+        // far more distinct words over time than the trie can hold; only one window of words has to fit
+        WindowedTrieBuffer trie = new WindowedTrieBuffer(200, 2);
+        int words_per_epoch = 10;
+        for (int epoch=0;epoch<1000;epoch++) {
+            trie.advance_to_epoch(epoch);
+            for (int i=0;i<words_per_epoch;i++) {
+                // 4 letter words, all distinct
+                int id = epoch*words_per_epoch+i;
+                StringBuilder word = new StringBuilder();
+                for (int j=0;j<4;j++) {
+                    word.append((char)('a'+id%26));
+                    id /= 26;
+                }
+                trie.insert_word(word.toString());
+                trie.insert_word(word.toString());
+            }
+            if (epoch%10==0) {
+                // queries reclaim expired words, but ingest must not depend on them
+                WordsAndCounts top = trie.top_window_counts(3);
+                assertEquals(3, top.getWordCount());
+                assertEquals(2, top.get_sorted_count(0));
+            }
+        }
+        // the last two epochs are in the window
+        assertEquals(2*words_per_epoch, trie.top_window_counts(100).getWordCount());
+        assertEquals(2*words_per_epoch, trie.getLiveWordCount());
+        assertEquals(2, trie.get_window_count("puoa"));    // the last word
+        assertEquals(0, trie.get_window_count("aaaa"));    // the first word
+    }
+}
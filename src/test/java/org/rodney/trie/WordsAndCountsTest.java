@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 
 import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -43,6 +44,19 @@ public class WordsAndCountsTest {
         }
     }
 
+    @Test
+    public void growableTest() {
+        WordsAndCounts word_count = new WordsAndCounts();
+        for (int i=0;i<100;i++) {
+            word_count.add("w"+i, i);
+        }
+        assertEquals(100, word_count.getWordCount());
+        word_count.sort_by_count_descending();
+        assertEquals("w99", word_count.get_sorted_word(0));
+        assertEquals(99, word_count.get_sorted_count(0));
+        assertEquals("w0", word_count.get_sorted_word(99));
+    }
+
     @Test
     public void sort_by_count_descendingTest001() {
         WordsAndCounts word_count = new WordsAndCounts(2);
@@ -98,4 +112,120 @@ public class WordsAndCountsTest {
                     );
                 });
     }
+
+    @Test
+    public void sort_by_count_descending_tiesTest() {
+        // words added out of order; ties must still be sorted by word
+        WordsAndCounts word_count = new WordsAndCounts(6);
+        word_count.add("zoo", 2);
+        word_count.add("the", 5);
+        word_count.add("wall", 2);
+        word_count.add("queen", 1);
+        word_count.add("their", 2);
+        word_count.add("a", 1);
+        word_count.sort_by_count_descending();
+
+        List<String> expected_words = List.of("the", "their", "wall", "zoo", "a", "queen");
+        List<Integer> expected_counts = List.of(5, 2, 2, 2, 1, 1);
+        for (int i=0;i<expected_words.size();i++) {
+            assertEquals(expected_words.get(i), word_count.get_sorted_word(i));
+            assertEquals(expected_counts.get(i), word_count.get_sorted_count(i));
+        }
+    }
+
+    @Test
+    public void sort_by_count_descending_unsignedTest() {
+        WordsAndCounts word_count = new WordsAndCounts(3);
+        word_count.add("a", 7);
+        word_count.add("b", -1);         // 0xFFFFFFFF as an unsigned TrieBuffer count
+        word_count.add("c", Integer.MAX_VALUE);
+        word_count.sort_by_count_descending(true);
+        assertEquals("b", word_count.get_sorted_word(0));
+        assertEquals("c", word_count.get_sorted_word(1));
+        assertEquals("a", word_count.get_sorted_word(2));
+    }
+
+    @Test
+    public void sort_by_count_descending_randomTest() {
+        Random random = new Random(11);
+        int size = 50000;
+        WordsAndCounts word_count = new WordsAndCounts(size);
+        for (int i=0;i<size;i++) {
+            word_count.add(Integer.toString(random.nextInt(1000000), 36), random.nextInt(20));
+        }
+        word_count.sort_by_count_descending();
+
+        Comparator<Integer> expected_order = Comparator
+                .comparing((Integer i) -> word_count.counts[i], Comparator.reverseOrder())
+                .thenComparing(i -> word_count.words[i]);
+        List<Integer> expected = IntStream.range(0, size)
+                .boxed()
+                .sorted(expected_order)
+                .collect(Collectors.toList());
+        for (int i=0;i<size;i++) {
+            assertEquals(word_count.words[expected.get(i)], word_count.get_sorted_word(i));
+            assertEquals(word_count.counts[expected.get(i)], word_count.get_sorted_count(i));
+        }
+    }
+
+    @Test
+    public void sort_by_count_descending_full_rangeTest() {
+        // counts that differ in every byte; words added in order, as by a trie walk
+        Random random = new Random(17);
+        int size = 20000;
+        WordsAndCounts word_count = new WordsAndCounts(size);
+        for (int i=0;i<size;i++) {
+            word_count.add(String.format("w%05d", i), random.nextInt(4)==0 ? 3 : random.nextInt());
+        }
+
+        Comparator<Integer> expected_order = Comparator
+                .comparing((Integer i) -> Integer.toUnsignedLong(word_count.counts[i]), Comparator.reverseOrder())
+                .thenComparing(i -> word_count.words[i]);
+        List<Integer> expected = IntStream.range(0, size)
+                .boxed()
+                .sorted(expected_order)
+                .collect(Collectors.toList());
+        // sequential, and in parallel chunks of uneven size
+        for (int chunk_count : new int[]{1, 7}) {
+            word_count.sort_by_count_descending(true, chunk_count);
+            for (int i=0;i<size;i++) {
+                assertEquals(word_count.words[expected.get(i)], word_count.get_sorted_word(i));
+            }
+        }
+    }
+
+    @Test
+    public void sort_by_count_descending_parallelTest() {
+        // enough words for the default chunking to sort in parallel on a multi core machine
+        Random random = new Random(19);
+        int size = 200000;
+        WordsAndCounts word_count = new WordsAndCounts();
+        for (int i=0;i<size;i++) {
+            word_count.add(Integer.toString(random.nextInt(10000000), 36), random.nextInt(1000));
+        }
+        word_count.sort_by_count_descending();
+
+        Comparator<Integer> expected_order = Comparator
+                .comparing((Integer i) -> word_count.counts[i], Comparator.reverseOrder())
+                .thenComparing(i -> word_count.words[i]);
+        List<Integer> expected = IntStream.range(0, size)
+                .boxed()
+                .sorted(expected_order)
+                .collect(Collectors.toList());
+        for (int i=0;i<size;i++) {
+            assertEquals(word_count.words[expected.get(i)], word_count.get_sorted_word(i));
+            assertEquals(word_count.counts[expected.get(i)], word_count.get_sorted_count(i));
+        }
+    }
+
+    @Test
+    public void words_in_orderTest() {
+        WordsAndCounts word_count = new WordsAndCounts(2);
+        word_count.add("the", 1);
+        word_count.add("and", 1);
+        // the words are not in order; ties would be ranked wrong
+        assertThrows(AssertionError.class, () -> word_count.sort_by_count_descending(true));
+        word_count.sort_by_count_descending();
+        assertEquals("and", word_count.get_sorted_word(0));
+    }
 }